@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import java.util.ArrayList;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.test.suitebuilder.annotation.LargeTest;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Test writing many {@link Logs} at once through
+ * {@link DataProvider#bulkInsert} and {@link DataProvider#applyBatch} and
+ * compare their throughput with writing row by row.
+ *
+ * @author flx
+ */
+@LargeTest
+public final class BulkInsertTest extends DataProviderTestCase {
+    /** Tag for output. */
+    private static final String TAG = "BulkInsertTest";
+
+    /** Number of logs written. */
+    private static final int LOGS = 10000;
+    /** Start of first log: 2012-01-02 08:00 UTC. */
+    private static final long START = 1325491200000L;
+    /** Time between two logs. */
+    private static final long STEP = 3L * 60L * 60L * 1000L;
+    /** Duration of a log. */
+    private static final long DURATION = 2L * 60L * 60L * 1000L;
+
+    /**
+     * Get the logs to write. The last log is left open.
+     *
+     * @return {@link ContentValues} of {@link #LOGS} logs
+     */
+    private static ContentValues[] getLogs() {
+        final ContentValues[] ret = new ContentValues[LOGS];
+        for (int i = 0; i < LOGS; i++) {
+            final long from = START + i * STEP;
+            ret[i] = new ContentValues();
+            ret[i].put(Logs.TYPE, Logtypes.TYPE_PAUSE + i % 3);
+            ret[i].put(Logs.FROM, from);
+            ret[i].put(Logs.TO, i == LOGS - 1 ? 0L : from + DURATION);
+        }
+        return ret;
+    }
+
+    /**
+     * Log the throughput of a write.
+     *
+     * @param name  kind of write
+     * @param start start time
+     */
+    private static void logTime(final String name, final long start) {
+        final long d = Math.max(1L, System.currentTimeMillis() - start);
+        Log.i(TAG, name + ": " + LOGS + " logs in " + d + "ms, "
+                + (LOGS * 1000L / d) + " logs/s");
+    }
+
+    /**
+     * Assert all logs were written.
+     */
+    private void assertWritten() {
+        assertEquals(String.valueOf(LOGS), this.queryRows(
+                "SELECT count(*) FROM " + Logs.TABLE, null).get(0));
+        this.assertConsistent();
+    }
+
+    /**
+     * Write each log with {@link ContentResolver#insert}, each in its own
+     * transaction.
+     */
+    public void testInsert() {
+        final ContentValues[] logs = getLogs();
+        final ContentResolver cr = this.getResolver();
+        final long start = System.currentTimeMillis();
+        for (ContentValues values : logs) {
+            assertNotNull(cr.insert(Logs.CONTENT_URI, values));
+        }
+        logTime("insert", start);
+        this.assertWritten();
+    }
+
+    /**
+     * Write all logs with {@link ContentResolver#bulkInsert}.
+     */
+    public void testBulkInsert() {
+        final ContentValues[] logs = getLogs();
+        final long start = System.currentTimeMillis();
+        assertEquals(LOGS,
+                this.getResolver().bulkInsert(Logs.CONTENT_URI, logs));
+        logTime("bulkInsert", start);
+        this.assertWritten();
+    }
+
+    /**
+     * Write all logs with {@link ContentResolver#applyBatch}.
+     *
+     * @throws Exception on errors
+     */
+    public void testApplyBatch() throws Exception {
+        final ContentValues[] logs = getLogs();
+        final ArrayList<ContentProviderOperation> ops =
+                new ArrayList<ContentProviderOperation>(LOGS);
+        for (ContentValues values : logs) {
+            ops.add(ContentProviderOperation.newInsert(Logs.CONTENT_URI)
+                    .withValues(values).build());
+        }
+        final long start = System.currentTimeMillis();
+        assertEquals(LOGS, this.getResolver().applyBatch(
+                DataProvider.AUTHORITY, ops).length);
+        logTime("applyBatch", start);
+        this.assertWritten();
+    }
+}
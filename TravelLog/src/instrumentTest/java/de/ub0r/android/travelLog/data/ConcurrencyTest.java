@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.suitebuilder.annotation.LargeTest;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Test reading the summary while another thread writes {@link Logs}, like the
+ * UI does while LocationChecker runs.
+ *
+ * @author flx
+ */
+@LargeTest
+public final class ConcurrencyTest extends DataProviderTestCase {
+    /** Tag for output. */
+    private static final String TAG = "ConcurrencyTest";
+
+    /** 2012-01-02 08:00 UTC. */
+    private static final long START = 1325491200000L;
+    /** An hour. */
+    private static final long HOUR = 60L * 60L * 1000L;
+    /** Number of logs written by the writer. */
+    private static final int WRITES = 200;
+    /** Number of reads measured without writer. */
+    private static final int READS = 100;
+    /** Longest time a read may take while a write is pending. */
+    private static final long MAX_BLOCKED = 2000L;
+    /** Time the writer keeps its transaction open at most. */
+    private static final long MAX_TRANSACTION = 10000L;
+
+    /** Error seen by the writer. */
+    private volatile Throwable writeError;
+
+    /**
+     * Get a log.
+     *
+     * @param i number of log
+     * @return {@link ContentValues}
+     */
+    private static ContentValues log(final int i) {
+        final ContentValues ret = new ContentValues();
+        ret.put(Logs.TYPE, Logtypes.TYPE_PAUSE + i % 3);
+        ret.put(Logs.FROM, START + i * HOUR);
+        ret.put(Logs.TO, START + i * HOUR + HOUR / 2);
+        return ret;
+    }
+
+    /**
+     * Read the summary.
+     *
+     * @return time taken in milliseconds
+     */
+    private long read() {
+        final long start = System.currentTimeMillis();
+        final Cursor cursor = this.getResolver().query(Logs.CONTENT_URI_SUM,
+                Logs.PROJECTION_SUM, null, null, null);
+        cursor.getCount();
+        cursor.close();
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Test the database runs in write-ahead-log mode where available.
+     */
+    public void testJournalMode() {
+        final String mode = this.queryRows("PRAGMA journal_mode", null)
+                .get(0);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            assertEquals("wal", mode.toLowerCase());
+        } else {
+            assertFalse("wal".equals(mode.toLowerCase()));
+        }
+    }
+
+    /**
+     * Test a read does not wait for an open write transaction and does not
+     * see its changes.
+     *
+     * @throws Exception on errors
+     */
+    public void testReadDuringWrite() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return; // rollback journal, readers wait for writers
+        }
+        this.getResolver().insert(Logs.CONTENT_URI, log(0));
+        final SQLiteDatabase db = this.getDatabase();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread writer = new Thread() {
+            @Override
+            public void run() {
+                db.beginTransaction();
+                try {
+                    final ContentValues values = log(1);
+                    Logs.fixValues(values);
+                    db.insert(Logs.TABLE, null, values);
+                    started.countDown();
+                    done.await(MAX_TRANSACTION, TimeUnit.MILLISECONDS);
+                } catch (Throwable e) {
+                    ConcurrencyTest.this.writeError = e;
+                } finally {
+                    // roll back
+                    db.endTransaction();
+                }
+            }
+        };
+        writer.start();
+        assertTrue(started.await(MAX_TRANSACTION, TimeUnit.MILLISECONDS));
+        final long start = System.currentTimeMillis();
+        final Cursor cursor = this.getResolver().query(Logs.CONTENT_URI,
+                Logs.PROJECTION_INTERVAL, null, null, null);
+        final int logs = cursor.getCount();
+        cursor.close();
+        final long d = System.currentTimeMillis() - start;
+        done.countDown();
+        writer.join();
+        assertNull(this.writeError);
+        Log.i(TAG, "read during write: " + d + "ms");
+        assertTrue("read blocked for " + d + "ms", d < MAX_BLOCKED);
+        assertEquals(1, logs);
+    }
+
+    /**
+     * Measure the latency of reading the summary with and without a thread
+     * writing {@link Logs} through the provider.
+     *
+     * @throws Exception on errors
+     */
+    public void testReadLatency() throws Exception {
+        final ContentResolver cr = this.getResolver();
+        for (int i = 0; i < WRITES; i++) {
+            cr.insert(Logs.CONTENT_URI, log(i));
+        }
+        long sum = 0L;
+        long max = 0L;
+        for (int i = 0; i < READS; i++) {
+            final long d = this.read();
+            sum += d;
+            max = Math.max(max, d);
+        }
+        Log.i(TAG, "read, idle: avg " + (sum / READS) + "ms, max " + max
+                + "ms");
+
+        final Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = WRITES; i < 2 * WRITES; i++) {
+                        cr.insert(Logs.CONTENT_URI, log(i));
+                    }
+                } catch (Throwable e) {
+                    ConcurrencyTest.this.writeError = e;
+                }
+            }
+        };
+        writer.start();
+        int n = 0;
+        sum = 0L;
+        max = 0L;
+        while (writer.isAlive()) {
+            final long d = this.read();
+            sum += d;
+            max = Math.max(max, d);
+            ++n;
+        }
+        writer.join();
+        assertNull(this.writeError);
+        Log.i(TAG, "read, " + WRITES + " writes: " + n + " reads, avg "
+                + (sum / Math.max(1, n)) + "ms, max " + max + "ms");
+        assertEquals(String.valueOf(2 * WRITES), this.queryRows(
+                "SELECT count(*) FROM " + Logs.TABLE, null).get(0));
+        this.assertConsistent();
+    }
+}
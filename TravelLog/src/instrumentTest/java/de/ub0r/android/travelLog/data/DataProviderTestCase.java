@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import java.util.ArrayList;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+import de.ub0r.android.travelLog.data.DataProvider.CurrentState;
+import de.ub0r.android.travelLog.data.DataProvider.DailySummary;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Base of tests running a {@link DataProvider} on its own database file. Like
+ * ProviderTestCase2, but the {@link Context} passes preferences through to the
+ * app: {@link DataProvider} reads them when creating the database and when
+ * rounding times, the isolated context of ProviderTestCase2 throws on them.
+ *
+ * @author flx
+ */
+public abstract class DataProviderTestCase extends AndroidTestCase {
+    /** Prefix of files used by tests. */
+    private static final String PREFIX = "test.";
+
+    /** {@link ContentResolver} serving the {@link DataProvider}. */
+    private MockContentResolver resolver;
+    /** {@link Context} renaming files and using the {@link #resolver}. */
+    private Context context;
+    /** {@link DataProvider} under test. */
+    private DataProvider provider;
+
+    /**
+     * Set up a {@link DataProvider} on an empty database. The database is not
+     * opened before the first access.
+     *
+     * @throws Exception on errors
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.resolver = new MockContentResolver();
+        this.context = new RenamingDelegatingContext(this.getContext(),
+                PREFIX) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return DataProviderTestCase.this.resolver;
+            }
+        };
+        this.context.deleteDatabase(DataProvider.DATABASE_NAME);
+        this.provider = new DataProvider();
+        this.provider.attachInfo(this.context, null);
+        this.resolver.addProvider(DataProvider.AUTHORITY, this.provider);
+    }
+
+    /**
+     * Close and remove the database.
+     *
+     * @throws Exception on errors
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.provider.getDatabase().close();
+        this.context.deleteDatabase(DataProvider.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    /**
+     * @return {@link Context} serving the {@link DataProvider}
+     */
+    protected Context getProviderContext() {
+        return this.context;
+    }
+
+    /**
+     * @return {@link ContentResolver} serving the {@link DataProvider}
+     */
+    protected ContentResolver getResolver() {
+        return this.resolver;
+    }
+
+    /**
+     * @return {@link DataProvider}'s {@link SQLiteDatabase}
+     */
+    protected SQLiteDatabase getDatabase() {
+        return this.provider.getDatabase();
+    }
+
+    /**
+     * Read all rows of a query on the {@link DataProvider}'s database.
+     *
+     * @param sql   query
+     * @param args  arguments
+     * @return rows, all values as strings
+     */
+    protected ArrayList<String> queryRows(final String sql,
+            final String[] args) {
+        return queryRows(this.getDatabase(), sql, args);
+    }
+
+    /**
+     * Read all rows of a query.
+     *
+     * @param db    {@link SQLiteDatabase}
+     * @param sql   query
+     * @param args  arguments
+     * @return rows, all values as strings
+     */
+    protected static ArrayList<String> queryRows(final SQLiteDatabase db,
+            final String sql, final String[] args) {
+        final ArrayList<String> ret = new ArrayList<String>();
+        final Cursor cursor = db.rawQuery(sql, args);
+        try {
+            final int l = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                final StringBuilder buf = new StringBuilder();
+                for (int i = 0; i < l; i++) {
+                    if (i > 0) {
+                        buf.append('|');
+                    }
+                    buf.append(cursor.getString(i));
+                }
+                ret.add(buf.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+        return ret;
+    }
+
+    /**
+     * Get sum of closed logs of a time type.
+     *
+     * @param timeType time type
+     * @return projection
+     */
+    private static String sum(final int timeType) {
+        return "sum(CASE WHEN " + Logs.TO + " > 0 AND " + Logs.TYPE_TYPE
+                + " = " + timeType + " THEN " + Logs.TO + " - " + Logs.FROM
+                + " ELSE 0 END)";
+    }
+
+    /**
+     * Assert the derived tables match {@link Logs}: {@link DailySummary}
+     * holds the sums of each day, the single row of {@link CurrentState} the
+     * number of open logs and the newest of them and each log's time type is
+     * the one of its {@link Logtypes}.
+     */
+    protected void assertConsistent() {
+        assertEquals("summary", this.queryRows("SELECT " + Logs.FROM_ED
+                + ", min(" + Logs.FROM + "), max(" + Logs.TO + "), "
+                + sum(Logtypes.TYPE_WORK) + ", " + sum(Logtypes.TYPE_TRAVEL)
+                + ", " + sum(Logtypes.TYPE_PAUSE) + " FROM " + Logs.TABLE
+                + " GROUP BY " + Logs.FROM_ED + " ORDER BY " + Logs.FROM_ED,
+                null), this.queryRows("SELECT " + DailySummary.ID + ", "
+                + Logs.FROM + ", " + Logs.TO + ", " + Logs.SUM_WORK + ", "
+                + Logs.SUM_TRAVEL + ", " + Logs.SUM_PAUSE + " FROM "
+                + DailySummary.TABLE + " ORDER BY " + DailySummary.ID, null));
+        final String open = " FROM " + Logs.TABLE + " WHERE (" + Logs.TO
+                + " = 0 OR " + Logs.TO + " IS NULL)";
+        final String columns = Logs.ID + ", " + Logs.TYPE + ", "
+                + Logs.TYPE_TYPE + ", " + Logs.FROM + ", " + Logs.FROM_ED
+                + ", " + Logs.STARTBYAUTO;
+        assertEquals("current state", this.queryRows("SELECT count(*)"
+                + open, null), this.queryRows("SELECT " + CurrentState.OPEN
+                + " FROM " + CurrentState.TABLE, null));
+        assertEquals("open log", this.queryRows("SELECT " + columns + open
+                + " ORDER BY " + Logs.FROM + " DESC, " + Logs.ID
+                + " DESC LIMIT 1", null), this.queryRows("SELECT " + columns
+                + " FROM " + CurrentState.TABLE + " WHERE "
+                + CurrentState.WHERE_OPEN, null));
+        assertEquals("time types", "0", this.queryRows("SELECT count(*) FROM "
+                + Logs.TABLE + " LEFT OUTER JOIN " + Logtypes.TABLE + " ON ("
+                + Logs.TABLE + "." + Logs.TYPE + " = " + Logtypes.TABLE + "."
+                + Logtypes.ID + ") WHERE " + Logs.TABLE + "." + Logs.TYPE_TYPE
+                + " IS NOT " + Logtypes.TABLE + "." + Logtypes.TIME_TYPE, null)
+                .get(0));
+    }
+}
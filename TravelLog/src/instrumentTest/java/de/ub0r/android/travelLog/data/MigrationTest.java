@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import java.util.ArrayList;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.DataProvider.CurrentState;
+import de.ub0r.android.travelLog.data.DataProvider.DailySummary;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Test upgrading a database written by version 7 of the schema.
+ *
+ * @author flx
+ */
+public final class MigrationTest extends DataProviderTestCase {
+    /** Tag for output. */
+    private static final String TAG = "MigrationTest";
+
+    /** Number of logs in the large table. */
+    private static final int LOGS = 10000;
+    /** Start of first log: 2012-01-02 08:00 UTC. */
+    private static final long START = 1325491200000L;
+    /** Time between two logs. */
+    private static final long STEP = 3L * 60L * 60L * 1000L;
+    /** Duration of a log. */
+    private static final long DURATION = 2L * 60L * 60L * 1000L;
+
+    /** Schema of version 4. */
+    private static final String[] SCHEMA_4 = new String[] {
+            "CREATE TABLE logs (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " _type INTEGER, _from LONG, _from_y INTEGER,"
+                    + " _from_m INTEGER, _from_w INTEGER, _from_d INTEGER,"
+                    + " _to LONG, _comment TEXT, _startbyauto INTEGER)",
+            "CREATE INDEX logs_day_idx ON logs (_from_d, _from)",
+            "CREATE INDEX logs_from_idx ON logs (_from)",
+            "CREATE INDEX logs_to_idx ON logs (_to)",
+            "CREATE INDEX logs_type_idx ON logs (_type)",
+            "CREATE TABLE logtypes (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " _name TEXT, _timetype INTEGER)",
+            "CREATE TABLE cells (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " _type INTEGER, _seen_first LONG, _seen_last LONG,"
+                    + " _lat INTEGER, _long INTEGER, _rad INTEGER)",
+            "CREATE TABLE daily_summary (_id INTEGER PRIMARY KEY,"
+                    + " _from LONG, _from_y INTEGER, _from_m INTEGER,"
+                    + " _from_w INTEGER, _from_d INTEGER, _to LONG,"
+                    + " _sum_work LONG, _sum_travel LONG, _sum_pause LONG)",
+            "CREATE INDEX daily_summary_from_idx ON daily_summary (_from)" };
+
+    /** Schema of version 7. */
+    private static final String[] SCHEMA_7 = new String[] {
+            "CREATE TABLE logs (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " _type INTEGER, _type_type INTEGER, _from LONG,"
+                    + " _from_y INTEGER, _from_m INTEGER, _from_w INTEGER,"
+                    + " _from_d INTEGER, _from_ed INTEGER, _from_ew INTEGER,"
+                    + " _from_em INTEGER, _to LONG, _comment TEXT,"
+                    + " _startbyauto INTEGER)",
+            "CREATE INDEX logs_day_idx ON logs (_from_ed, _from)",
+            "CREATE INDEX logs_from_idx ON logs (_from)",
+            "CREATE INDEX logs_to_idx ON logs (_to)",
+            "CREATE INDEX logs_type_idx ON logs (_type)",
+            "CREATE INDEX logs_timetype_idx ON logs"
+                    + " (_from_ed, _type_type, _to, _from)",
+            "CREATE TABLE logtypes (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " _name TEXT, _timetype INTEGER)",
+            "CREATE TABLE cells (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " _type INTEGER, _seen_first LONG, _seen_last LONG,"
+                    + " _lat INTEGER, _long INTEGER, _rad INTEGER)",
+            "CREATE TABLE daily_summary (_id INTEGER PRIMARY KEY,"
+                    + " _from LONG, _from_y INTEGER, _from_m INTEGER,"
+                    + " _from_w INTEGER, _from_d INTEGER, _from_ed INTEGER,"
+                    + " _from_ew INTEGER, _from_em INTEGER, _to LONG,"
+                    + " _sum_work LONG, _sum_travel LONG, _sum_pause LONG)",
+            "CREATE INDEX daily_summary_from_idx ON daily_summary (_from)",
+            "CREATE TABLE current_state (_id INTEGER PRIMARY KEY,"
+                    + " _type INTEGER, _type_type INTEGER, _from LONG,"
+                    + " _startbyauto INTEGER)" };
+
+    /** Fill current_state of version 7. */
+    private static final String STATE_7 = "INSERT INTO current_state"
+            + " SELECT _id, _type, _type_type, _from, _startbyauto FROM logs"
+            + " WHERE _to = 0";
+
+    /** Columns of {@link Logs} written by all versions. */
+    private static final String LOG_COLUMNS = Logs.ID + ", " + Logs.TYPE
+            + ", " + Logs.FROM + ", " + Logs.FROM_Y + ", " + Logs.FROM_M + ", "
+            + Logs.FROM_W + ", " + Logs.FROM_D + ", " + Logs.TO + ", "
+            + Logs.COMMENT + ", " + Logs.STARTBYAUTO;
+
+    /**
+     * Write a database of an old version. The last log is left open.
+     *
+     * @param version version
+     * @param schema  schema of version
+     * @param types   add {@link Logtypes}, old versions added them on each
+     *                start
+     * @param logs    number of logs
+     */
+    private void createDatabase(final int version, final String[] schema,
+            final boolean types, final int logs) {
+        final SQLiteDatabase db = this.getProviderContext()
+                .openOrCreateDatabase(DataProvider.DATABASE_NAME,
+                        Context.MODE_PRIVATE, null);
+        db.beginTransaction();
+        try {
+            for (String sql : schema) {
+                db.execSQL(sql);
+            }
+            if (types) {
+                for (int t = Logtypes.TYPE_PAUSE; // .
+                     t <= Logtypes.TYPE_WORK; t++) {
+                    final ContentValues values = new ContentValues();
+                    values.put(Logtypes.ID, t);
+                    values.put(Logtypes.NAME, "type " + t);
+                    values.put(Logtypes.TIME_TYPE, t);
+                    db.insert(Logtypes.TABLE, null, values);
+                }
+            }
+            for (int i = 0; i < logs; i++) {
+                final ContentValues values = new ContentValues();
+                final long from = START + i * STEP;
+                final int type = Logtypes.TYPE_PAUSE + i % 3;
+                values.put(Logs.FROM, from);
+                Logs.fixValues(values);
+                values.put(Logs.TO, i == logs - 1 ? 0L : from + DURATION);
+                values.put(Logs.TYPE, type);
+                values.put(Logs.COMMENT, "log " + i);
+                values.put(Logs.STARTBYAUTO, i % 2);
+                if (version < 5) {
+                    values.remove(Logs.FROM_ED);
+                    values.remove(Logs.FROM_EW);
+                    values.remove(Logs.FROM_EM);
+                } else {
+                    values.put(Logs.TYPE_TYPE, type);
+                }
+                db.insert(Logs.TABLE, null, values);
+            }
+            if (version >= 7) {
+                DailySummary.rebuild(db, null);
+                db.execSQL(STATE_7);
+            }
+            db.setVersion(version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    /**
+     * Read {@link Logs} of the old database, without upgrading it.
+     *
+     * @return all {@link Logs}
+     */
+    private ArrayList<String> getOldLogs() {
+        final SQLiteDatabase db = this.getProviderContext()
+                .openOrCreateDatabase(DataProvider.DATABASE_NAME,
+                        Context.MODE_PRIVATE, null);
+        try {
+            return queryRows(db, "SELECT " + LOG_COLUMNS + " FROM "
+                    + Logs.TABLE + " ORDER BY " + Logs.ID, null);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Upgrade the database.
+     *
+     * @param logs expected number of logs
+     * @return {@link Logs} of the upgraded database
+     */
+    private ArrayList<String> upgrade(final int logs) {
+        final long start = System.currentTimeMillis();
+        final SQLiteDatabase db = this.getDatabase();
+        Log.i(TAG, "upgrade of " + logs + " logs: "
+                + (System.currentTimeMillis() - start) + "ms");
+        assertEquals(DataProvider.DATABASE_VERSION, db.getVersion());
+        assertEquals(0, this.queryRows("SELECT name FROM sqlite_master"
+                + " WHERE name = 'logs_type_idx'", null).size());
+        final ArrayList<String> ret = this.queryRows("SELECT " + LOG_COLUMNS
+                + " FROM " + Logs.TABLE + " ORDER BY " + Logs.ID, null);
+        assertEquals(logs, ret.size());
+        return ret;
+    }
+
+    /**
+     * Test upgrading a large table of version 7.
+     */
+    public void testUpgrade7() {
+        this.createDatabase(7, SCHEMA_7, true, LOGS);
+        final ArrayList<String> logs = this.getOldLogs();
+        assertEquals(logs, this.upgrade(LOGS));
+        // types of version 7 are kept
+        assertEquals(3, this.queryRows("SELECT * FROM " + Logtypes.TABLE
+                + " WHERE " + Logtypes.NAME + " LIKE 'type %'", null).size());
+        assertEquals("1", this.queryRows("SELECT " + CurrentState.OPEN
+                + " FROM " + CurrentState.TABLE, null).get(0));
+        this.assertConsistent();
+    }
+
+    /**
+     * Test upgrading a database of version 7 without {@link Logtypes}. The
+     * default types are added.
+     */
+    public void testUpgrade7WithoutTypes() {
+        this.createDatabase(7, SCHEMA_7, false, 10);
+        this.upgrade(10);
+        final ArrayList<String> types = this.queryRows("SELECT "
+                + Logtypes.ID + ", " + Logtypes.TIME_TYPE + " FROM "
+                + Logtypes.TABLE + " ORDER BY " + Logtypes.ID, null);
+        assertEquals(3, types.size());
+        assertEquals(Logtypes.TYPE_PAUSE + "|" + Logtypes.TYPE_PAUSE,
+                types.get(0));
+        assertEquals(Logtypes.TYPE_TRAVEL + "|" + Logtypes.TYPE_TRAVEL,
+                types.get(1));
+        assertEquals(Logtypes.TYPE_WORK + "|" + Logtypes.TYPE_WORK,
+                types.get(2));
+        this.assertConsistent();
+    }
+
+    /**
+     * Test upgrading a large table of version 4. The days, weeks and months
+     * since epoch are filled in by the upgrade and must match
+     * {@link Logs#fixValues}.
+     */
+    public void testUpgrade4() {
+        this.createDatabase(4, SCHEMA_4, true, LOGS);
+        final ArrayList<String> logs = this.getOldLogs();
+        assertEquals(logs, this.upgrade(LOGS));
+        final ArrayList<String> buckets = this.queryRows("SELECT "
+                + Logs.FROM + ", " + Logs.FROM_ED + ", " + Logs.FROM_EW + ", "
+                + Logs.FROM_EM + " FROM " + Logs.TABLE + " ORDER BY "
+                + Logs.ID, null);
+        for (String row : buckets) {
+            final ContentValues values = new ContentValues();
+            values.put(Logs.FROM, Long.parseLong(row.split("\\|")[0]));
+            Logs.fixValues(values);
+            assertEquals(values.getAsLong(Logs.FROM) + "|"
+                    + values.getAsLong(Logs.FROM_ED) + "|"
+                    + values.getAsLong(Logs.FROM_EW) + "|"
+                    + values.getAsLong(Logs.FROM_EM), row);
+        }
+        this.assertConsistent();
+    }
+}
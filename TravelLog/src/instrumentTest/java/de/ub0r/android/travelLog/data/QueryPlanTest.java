@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+import de.ub0r.android.travelLog.data.DataProvider.CurrentState;
+import de.ub0r.android.travelLog.data.DataProvider.DailySummary;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Test the indexes on {@link Logs} serve the queries done by the UI, the
+ * {@link DataProvider}'s writes and the summaries. The queries are built like
+ * {@link DataProvider#query} does and checked with EXPLAIN QUERY PLAN.
+ *
+ * @author flx
+ */
+public final class QueryPlanTest extends DataProviderTestCase {
+    /** Index on {@link Logs#FROM_ED}, {@link Logs#FROM}. */
+    private static final String DAY_IDX = Logs.TABLE + "_day_idx";
+    /** Index on {@link Logs#FROM}. */
+    private static final String FROM_IDX = Logs.TABLE + "_from_idx";
+    /** Index on {@link Logs#TO}. */
+    private static final String TO_IDX = Logs.TABLE + "_to_idx";
+    /** Covering index on {@link Logs#FROM_ED}, {@link Logs#TYPE_TYPE}. */
+    private static final String TIMETYPE_IDX = Logs.TABLE + "_timetype_idx";
+
+    /** Sort order of pages. */
+    private static final String ORDER_PAGE = Logs.FROM_ED + " DESC, "
+            + Logs.FROM + " DESC, " + Logs.TABLE + "." + Logs.ID + " DESC";
+    /** Where clause of open logs, see Logs.WHERE_OPEN. */
+    private static final String WHERE_OPEN = "(" + Logs.TO + " = 0 OR "
+            + Logs.TO + " is NULL)";
+    /** {@link Logs} joined with {@link Logtypes}, see Logs.JOIN_LOGTYPES. */
+    private static final String JOIN_LOGTYPES = Logs.TABLE
+            + " LEFT OUTER JOIN " + Logtypes.TABLE + " ON (" + Logs.TABLE
+            + "." + Logs.TYPE + " = " + Logtypes.TABLE + "." + Logtypes.ID
+            + ")";
+
+    /**
+     * Get the query plan of a statement.
+     *
+     * @param sql  statement
+     * @param args arguments
+     * @return details of all steps, one a line
+     */
+    private String explain(final String sql, final String[] args) {
+        final StringBuilder buf = new StringBuilder();
+        final Cursor cursor = this.getDatabase().rawQuery(
+                "EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            final int idDetail = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                buf.append(cursor.getString(idDetail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Assert a query's plan uses an index.
+     *
+     * @param plan  query plan
+     * @param index name of index
+     */
+    private static void assertUses(final String plan, final String index) {
+        assertTrue("expected " + index + " in plan:\n" + plan,
+                plan.contains(index));
+    }
+
+    /**
+     * Assert a query's plan does not sort the result.
+     *
+     * @param plan query plan
+     */
+    private static void assertNoSort(final String plan) {
+        assertFalse("unexpected sort in plan:\n" + plan,
+                plan.contains("TEMP B-TREE FOR ORDER BY"));
+    }
+
+    /**
+     * Build a query on {@link Logs}.
+     *
+     * @param tables     tables
+     * @param projection projection
+     * @param where      where clause
+     * @param orderBy    sort order
+     * @param limit      limit
+     * @return query
+     */
+    private static String query(final String tables,
+            final String[] projection, final String where,
+            final String orderBy, final String limit) {
+        return SQLiteQueryBuilder.buildQueryString(false, tables, projection,
+                where, null, null, orderBy, limit);
+    }
+
+    /**
+     * Test the indexes of an upgraded or new database: the old index on
+     * {@link Logs#TYPE} is gone.
+     */
+    public void testIndexes() {
+        final ArrayList<String> indexes = this.queryRows(
+                "SELECT name FROM sqlite_master WHERE type = 'index'"
+                        + " AND tbl_name = ? AND sql IS NOT NULL",
+                new String[] { Logs.TABLE });
+        assertEquals(new HashSet<String>(Arrays.asList(DAY_IDX, FROM_IDX,
+                TO_IDX, TIMETYPE_IDX)), new HashSet<String>(indexes));
+    }
+
+    /**
+     * Test the first and the following pages of the list of logs.
+     */
+    public void testPage() {
+        String plan = this.explain(
+                query(JOIN_LOGTYPES, Logs.PROJECTION, null, ORDER_PAGE, "30"),
+                null);
+        assertUses(plan, DAY_IDX);
+        plan = this.explain(
+                query(Logs.TABLE, Logs.PROJECTION_PLAIN, null, ORDER_PAGE,
+                        "30"), null);
+        assertUses(plan, DAY_IDX);
+        final String where = Logs.getWherePage(
+                Logs.getPageUri(Logs.CONTENT_URI, 30, 15000L,
+                        1296000000000L, 42L), Logs.FROM_ED, Logs.FROM,
+                Logs.TABLE + "." + Logs.ID);
+        plan = this.explain(
+                query(Logs.TABLE, Logs.PROJECTION_PLAIN, where, ORDER_PAGE,
+                        "30"), null);
+        assertUses(plan, DAY_IDX);
+    }
+
+    /**
+     * Test loading the logs of a page's days and of a single day.
+     */
+    public void testDays() {
+        String plan = this.explain(
+                query(Logs.TABLE, Logs.PROJECTION_DAYS, Logs.FROM_ED
+                        + " BETWEEN 15000 AND 15010", Logs.FROM_ED + " DESC, "
+                        + Logs.FROM + " DESC", null), null);
+        assertUses(plan, DAY_IDX);
+        assertNoSort(plan);
+        plan = this.explain(
+                query(Logs.TABLE, Logs.PROJECTION_EDIT, Logs.FROM_ED
+                        + " = 15000", Logs.FROM + " DESC", null), null);
+        assertUses(plan, DAY_IDX);
+        assertNoSort(plan);
+    }
+
+    /**
+     * Test the export, ordered by {@link Logs#FROM}.
+     */
+    public void testExport() {
+        final String plan = this.explain(
+                query(Logs.TABLE, Logs.PROJECTION_EDIT, null, Logs.FROM,
+                        null), null);
+        assertUses(plan, FROM_IDX);
+        assertNoSort(plan);
+    }
+
+    /**
+     * Test closing open logs and closing the one held by
+     * {@link CurrentState}.
+     */
+    public void testOpen() {
+        String plan = this.explain("UPDATE " + Logs.TABLE + " SET "
+                + Logs.TO + " = 1 WHERE " + WHERE_OPEN, null);
+        assertUses(plan, TO_IDX);
+        plan = this.explain(
+                query(Logs.TABLE, new String[] { Logs.ID }, WHERE_OPEN, null,
+                        null), null);
+        assertUses(plan, TO_IDX);
+        // the single open log is closed through the primary key
+        plan = this.explain("UPDATE " + Logs.TABLE + " SET " + Logs.TO
+                + " = 1 WHERE " + Logs.ID + " = (SELECT " + CurrentState.ID
+                + " FROM " + CurrentState.TABLE + ")", null);
+        assertTrue(plan, plan.contains("PRIMARY KEY"));
+    }
+
+    /**
+     * Test rebuilding {@link DailySummary} and adding the running logs to
+     * it.
+     */
+    public void testSummary() {
+        String plan = this.explain(SQLiteQueryBuilder.buildQueryString(
+                false, Logs.TABLE, new String[] { Logs.FROM_ED,
+                        "min(" + Logs.FROM + ")", "max(" + Logs.TO + ")" },
+                Logs.FROM_ED + " in (15000,15001)", Logs.FROM_ED, null, null,
+                null), null);
+        assertUses(plan, DAY_IDX);
+        // bind the current time to each "?" like the provider does
+        int n = 0;
+        for (String p : Logs.PROJECTION_SUM) {
+            for (int i = p.indexOf('?'); i >= 0; i = p.indexOf('?', i + 1)) {
+                ++n;
+            }
+        }
+        final String[] now = new String[n];
+        Arrays.fill(now, String.valueOf(System.currentTimeMillis()));
+        plan = this.explain(
+                query(DailySummary.TABLE, Logs.PROJECTION_SUM, null,
+                        DailySummary.ID + " DESC", "30"), now);
+        assertUses(plan, TIMETYPE_IDX);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Test {@link DataProvider} starts without touching the database and seeds it
+ * on first access.
+ *
+ * @author flx
+ */
+public final class StartupTest extends DataProviderTestCase {
+    /** Tag for output. */
+    private static final String TAG = "StartupTest";
+
+    /** Number of providers started. */
+    private static final int STARTS = 20;
+
+    /** Number of logs saved by old versions, see DataProvider. */
+    private static final String PREFS_LISTCOUNT = "log_n";
+    /** Start of a log saved by old versions. */
+    private static final String PREFS_LIST_START = "log_start_";
+    /** End of a log saved by old versions. */
+    private static final String PREFS_LIST_STOP = "log_stop_";
+    /** Type of a log saved by old versions. */
+    private static final String PREFS_LIST_TYPE = "log_type_";
+
+    /**
+     * @return true, if the database file exists
+     */
+    private boolean hasDatabase() {
+        return this.getProviderContext()
+                .getDatabasePath(DataProvider.DATABASE_NAME).exists();
+    }
+
+    /**
+     * @return number of {@link Logtypes} read through the provider
+     */
+    private int countLogtypes() {
+        final Cursor cursor = this.getResolver().query(Logtypes.CONTENT_URI,
+                null, null, null, null);
+        final int ret = cursor.getCount();
+        cursor.close();
+        return ret;
+    }
+
+    /**
+     * Test starting providers does not open the database and measure the
+     * time spent in {@link DataProvider#onCreate()}.
+     */
+    public void testLazyOpen() {
+        final long start = System.nanoTime();
+        for (int i = 0; i < STARTS; i++) {
+            new DataProvider().attachInfo(this.getProviderContext(), null);
+        }
+        Log.i(TAG, "onCreate(): "
+                + ((System.nanoTime() - start) / STARTS / 1000L) + "us");
+        assertFalse(this.hasDatabase());
+        assertEquals(3, this.countLogtypes());
+        assertTrue(this.hasDatabase());
+    }
+
+    /**
+     * Get number of {@link Logtypes} seen by a new {@link DataProvider}.
+     *
+     * @return number of {@link Logtypes}
+     */
+    private int countLogtypesOnRestart() {
+        this.getDatabase().close();
+        final DataProvider provider = new DataProvider();
+        provider.attachInfo(this.getProviderContext(), null);
+        final Cursor cursor = provider.getDatabase().query(Logtypes.TABLE,
+                null, null, null, null, null, null);
+        final int ret = cursor.getCount();
+        cursor.close();
+        provider.getDatabase().close();
+        return ret;
+    }
+
+    /**
+     * Test default {@link Logtypes} are added once, not again on each start.
+     */
+    public void testSeedOnce() {
+        assertEquals(3, this.countLogtypes());
+        assertEquals(3, this.countLogtypesOnRestart());
+    }
+
+    /**
+     * Test default {@link Logtypes} are added again, if all types were
+     * deleted. Old versions did so on each start.
+     */
+    public void testReseed() {
+        assertEquals(3, this.countLogtypes());
+        this.getDatabase().delete(Logtypes.TABLE, null, null);
+        assertEquals(3, this.countLogtypesOnRestart());
+    }
+
+    /**
+     * Test logs saved in preferences by old versions are imported on first
+     * access and removed afterwards.
+     */
+    public void testImport() {
+        final SharedPreferences p = PreferenceManager
+                .getDefaultSharedPreferences(this.getContext());
+        if (p.contains(PREFS_LISTCOUNT)) {
+            Log.w(TAG, "skip import, preferences hold real logs");
+            return;
+        }
+        final long from = 1325491200000L;
+        p.edit().putInt(PREFS_LISTCOUNT, 1)
+                .putLong(PREFS_LIST_START + 0, from)
+                .putLong(PREFS_LIST_STOP + 0, from + 1000L)
+                .putInt(PREFS_LIST_TYPE + 0, Logtypes.TYPE_WORK)
+                .commit();
+        try {
+            assertFalse(this.hasDatabase());
+            assertEquals(from + "|" + (from + 1000L) + "|"
+                    + Logtypes.TYPE_WORK, this.queryRows("SELECT "
+                    + Logs.FROM + ", " + Logs.TO + ", " + Logs.TYPE_TYPE
+                    + " FROM " + Logs.TABLE, null).get(0));
+            assertFalse(p.contains(PREFS_LISTCOUNT));
+            this.assertConsistent();
+        } finally {
+            p.edit().remove(PREFS_LISTCOUNT).remove(PREFS_LIST_START + 0)
+                    .remove(PREFS_LIST_STOP + 0).remove(PREFS_LIST_TYPE + 0)
+                    .commit();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import java.util.ArrayList;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Test {@link DataProvider.DailySummary} and
+ * {@link DataProvider.CurrentState} follow all kinds of writes to
+ * {@link Logs} and {@link Logtypes}, and the cost of refreshing the summary.
+ *
+ * @author flx
+ */
+public final class SummaryTest extends DataProviderTestCase {
+    /** Tag for output. */
+    private static final String TAG = "SummaryTest";
+
+    /** 2012-01-02 08:00 UTC. */
+    private static final long START = 1325491200000L;
+    /** An hour. */
+    private static final long HOUR = 60L * 60L * 1000L;
+    /** A day. */
+    private static final long DAY = 24L * HOUR;
+    /** Number of refreshes of the summary. */
+    private static final int REFRESHES = 200;
+
+    /**
+     * Get a log.
+     *
+     * @param type type
+     * @param from start
+     * @param to   end, 0 for open logs
+     * @return {@link ContentValues}
+     */
+    private static ContentValues log(final int type, final long from,
+            final long to) {
+        final ContentValues ret = new ContentValues();
+        ret.put(Logs.TYPE, type);
+        ret.put(Logs.FROM, from);
+        ret.put(Logs.TO, to);
+        return ret;
+    }
+
+    /**
+     * Insert a log.
+     *
+     * @param type type
+     * @param from start
+     * @param to   end, 0 for open logs
+     * @return {@link Uri} of log
+     */
+    private Uri insert(final int type, final long from, final long to) {
+        final Uri ret = this.getResolver().insert(Logs.CONTENT_URI,
+                log(type, from, to));
+        assertNotNull(ret);
+        return ret;
+    }
+
+    /**
+     * Test single writes through the {@link ContentResolver}.
+     */
+    public void testWrites() {
+        final ContentResolver cr = this.getResolver();
+        final Uri first = this.insert(Logtypes.TYPE_WORK, START, START + HOUR);
+        this.insert(Logtypes.TYPE_TRAVEL, START + HOUR, START + 2 * HOUR);
+        this.insert(Logtypes.TYPE_PAUSE, START + DAY, START + DAY + HOUR);
+        this.assertConsistent();
+
+        // open a log, no end set
+        final ContentValues values = new ContentValues();
+        values.put(Logs.TYPE, Logtypes.TYPE_WORK);
+        values.put(Logs.FROM, START + 2 * DAY);
+        final Uri open = cr.insert(Logs.CONTENT_URI, values);
+        this.assertConsistent();
+
+        // move a log to another day
+        values.clear();
+        values.put(Logs.FROM, START + 3 * DAY);
+        values.put(Logs.TO, START + 3 * DAY + 2 * HOUR);
+        assertEquals(1, cr.update(first, values, null, null));
+        this.assertConsistent();
+
+        // change type of all logs of a type
+        values.clear();
+        values.put(Logs.TYPE, Logtypes.TYPE_TRAVEL);
+        assertTrue(cr.update(Logs.CONTENT_URI, values, Logs.TYPE + " = ?",
+                new String[] { String.valueOf(Logtypes.TYPE_PAUSE) }) > 0);
+        this.assertConsistent();
+
+        // close the open log by its item
+        values.clear();
+        values.put(Logs.TO, START + 2 * DAY + HOUR);
+        assertEquals(1, cr.update(open, values, null, null));
+        this.assertConsistent();
+
+        // reopen it
+        values.clear();
+        values.put(Logs.TO, 0L);
+        assertEquals(1, cr.update(open, values, null, null));
+        this.assertConsistent();
+
+        // change the time type of a log type
+        values.clear();
+        values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_WORK);
+        assertEquals(1, cr.update(ContentUris.withAppendedId(
+                Logtypes.CONTENT_URI, Logtypes.TYPE_TRAVEL), values, null,
+                null));
+        this.assertConsistent();
+        values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_TRAVEL);
+        assertEquals(1, cr.update(ContentUris.withAppendedId(
+                Logtypes.CONTENT_URI, Logtypes.TYPE_TRAVEL), values, null,
+                null));
+        this.assertConsistent();
+
+        // delete single and selected logs
+        assertEquals(1, cr.delete(first, null, null));
+        this.assertConsistent();
+        assertTrue(cr.delete(Logs.CONTENT_URI, Logs.FROM + " < ?",
+                new String[] { String.valueOf(START + 2 * DAY) }) > 0);
+        this.assertConsistent();
+        assertEquals(1, cr.delete(Logs.CONTENT_URI_OPEN, null, null));
+        this.assertConsistent();
+        assertEquals("0", this.queryRows("SELECT count(*) FROM "
+                + Logs.TABLE, null).get(0));
+    }
+
+    /**
+     * Test opening, switching and closing logs like the UI and the location
+     * check do.
+     */
+    public void testSwitch() {
+        final Context context = this.getProviderContext();
+        final long now = System.currentTimeMillis();
+        Logs.openNew(context, now - 5 * HOUR, Logtypes.TYPE_WORK, false);
+        this.assertConsistent();
+        Logs.switchOpen(context, now - 4 * HOUR, Logtypes.TYPE_TRAVEL, true);
+        this.assertConsistent();
+        // same type, nothing changes
+        Logs.switchOpen(context, now - 3 * HOUR, Logtypes.TYPE_TRAVEL, true);
+        this.assertConsistent();
+        Logs.switchOpen(context, now - 2 * HOUR, Logtypes.TYPE_PAUSE, false);
+        this.assertConsistent();
+        // only logs opened by automation are closed
+        Logs.closeOpen(context, now - HOUR, true);
+        this.assertConsistent();
+        assertEquals(1, this.queryRows("SELECT * FROM "
+                + DataProvider.CurrentState.TABLE + " WHERE "
+                + DataProvider.CurrentState.WHERE_OPEN, null).size());
+        Logs.closeOpen(context, now - HOUR, false);
+        this.assertConsistent();
+        assertEquals(0, this.queryRows("SELECT * FROM "
+                + DataProvider.CurrentState.TABLE + " WHERE "
+                + DataProvider.CurrentState.WHERE_OPEN, null).size());
+        Logs.switchOpen(context, now, 0, false);
+        this.assertConsistent();
+    }
+
+    /**
+     * Test batched writes.
+     *
+     * @throws Exception on errors
+     */
+    public void testBatch() throws Exception {
+        final ContentValues[] logs = new ContentValues[50];
+        for (int i = 0; i < logs.length; i++) {
+            final long from = START + i * 5 * HOUR;
+            logs[i] = log(Logtypes.TYPE_PAUSE + i % 3, from,
+                    i == logs.length - 1 ? 0L : from + 4 * HOUR);
+        }
+        assertEquals(logs.length,
+                this.getResolver().bulkInsert(Logs.CONTENT_URI, logs));
+        this.assertConsistent();
+
+        final ArrayList<ContentProviderOperation> ops =
+                new ArrayList<ContentProviderOperation>();
+        ops.add(ContentProviderOperation.newInsert(Logs.CONTENT_URI)
+                .withValues(log(Logtypes.TYPE_WORK, START - DAY, 0L)).build());
+        ops.add(ContentProviderOperation.newUpdate(Logs.CONTENT_URI)
+                .withSelection(Logs.TYPE + " = ?", new String[] {
+                        String.valueOf(Logtypes.TYPE_WORK) })
+                .withValue(Logs.TYPE, Logtypes.TYPE_PAUSE).build());
+        ops.add(ContentProviderOperation.newUpdate(Logs.CONTENT_URI_OPEN)
+                .withValue(Logs.TO, START + 300 * HOUR).build());
+        ops.add(ContentProviderOperation.newDelete(Logs.CONTENT_URI)
+                .withSelection(Logs.FROM + " < ?", new String[] {
+                        String.valueOf(START + DAY) }).build());
+        this.getResolver().applyBatch(DataProvider.AUTHORITY, ops);
+        this.assertConsistent();
+        assertEquals(0, this.queryRows("SELECT * FROM "
+                + DataProvider.CurrentState.TABLE + " WHERE "
+                + DataProvider.CurrentState.WHERE_OPEN, null).size());
+    }
+
+    /**
+     * Test {@link Logs#METHOD_OPEN}: the newest open log, or the newest open
+     * log of some time types started on a day, even if another log was
+     * opened later.
+     */
+    public void testOpen() {
+        final Context context = this.getProviderContext();
+        final long today = Logs.getEpochDay(START);
+        final int[] counted = new int[] { Logtypes.TYPE_WORK };
+        assertTrue(Logs.getOpen(context).isEmpty());
+        assertTrue(Logs.getOpen(context, today, counted).isEmpty());
+        final long work = ContentUris.parseId(this.insert(Logtypes.TYPE_WORK,
+                START, 0L));
+        final long pause = ContentUris.parseId(this.insert(
+                Logtypes.TYPE_PAUSE, START + HOUR, 0L));
+        this.assertConsistent();
+        assertEquals(pause, Logs.getOpen(context).getLong(Logs.ID));
+        assertEquals(work, Logs.getOpen(context, today, counted)
+                .getLong(Logs.ID));
+        assertTrue(Logs.getOpen(context, today + 1, counted).isEmpty());
+        assertTrue(Logs.getOpen(context, today,
+                new int[] { Logtypes.TYPE_TRAVEL }).isEmpty());
+    }
+
+    /**
+     * Test the narrow projections with a selection forcing the join with
+     * {@link Logtypes}.
+     */
+    public void testJoinedProjections() {
+        final long id = ContentUris.parseId(this.insert(Logtypes.TYPE_WORK,
+                START, START + HOUR));
+        final String where = Logtypes.TABLE + "." + Logtypes.NAME
+                + " IS NOT NULL";
+        final String[][] projections = new String[][] {
+                Logs.PROJECTION_PLAIN, Logs.PROJECTION_INTERVAL,
+                Logs.PROJECTION_EDIT, Logs.PROJECTION_DAYS };
+        for (String[] projection : projections) {
+            final Cursor cursor = this.getResolver().query(Logs.CONTENT_URI,
+                    projection, where, null, Logs.TABLE + "." + Logs.ID);
+            assertTrue(cursor.moveToFirst());
+            assertEquals(id, cursor.getLong(cursor.getColumnIndex(Logs.ID)));
+            cursor.close();
+        }
+    }
+
+    /**
+     * Test {@link Logs#METHOD_SUMS} rejects calls without days.
+     */
+    public void testSumsWithoutDays() {
+        try {
+            this.getResolver().call(Logs.CONTENT_URI, Logs.METHOD_SUMS, null,
+                    null);
+            fail("sums without days");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test the running log is added to the summary read through
+     * {@link Logs#CONTENT_URI_SUM} and measure refreshing it.
+     */
+    public void testLiveSum() {
+        final long now = System.currentTimeMillis();
+        this.insert(Logtypes.TYPE_WORK, now - 3 * HOUR, now - 2 * HOUR);
+        this.insert(Logtypes.TYPE_WORK, now - HOUR, 0L);
+        final ContentResolver cr = this.getResolver();
+        long work = 0L;
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < REFRESHES; i++) {
+            final Cursor cursor = cr.query(Logs.CONTENT_URI_SUM,
+                    Logs.PROJECTION_SUM, null, null, null);
+            // the logs may span two days
+            final int idWork = cursor.getColumnIndex(Logs.SUM_WORK);
+            work = 0L;
+            while (cursor.moveToNext()) {
+                work += cursor.getLong(idWork);
+            }
+            cursor.close();
+        }
+        final long end = System.currentTimeMillis();
+        Log.i(TAG, REFRESHES + " refreshes of the summary: " + (end - start)
+                + "ms");
+        // the closed log's hour and the running hour
+        assertTrue("work: " + work, work >= 2 * HOUR);
+        assertTrue("work: " + work, work <= 2 * HOUR + end - now);
+    }
+}
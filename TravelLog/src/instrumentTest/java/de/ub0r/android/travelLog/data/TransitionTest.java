@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Debug;
+import android.test.suitebuilder.annotation.LargeTest;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.DataProvider.Cells;
+import de.ub0r.android.travelLog.data.DataProvider.CurrentState;
+import de.ub0r.android.travelLog.data.DataProvider.Logs;
+import de.ub0r.android.travelLog.data.DataProvider.Logtypes;
+
+/**
+ * Measure the writes done by LocationChecker on entering and leaving a cell:
+ * switch the open log, close it and touch the cell. The provider runs them
+ * through its cached statements. Writes with a selection argument or extra
+ * values take the generic path for comparison.
+ *
+ * @author flx
+ */
+@LargeTest
+public final class TransitionTest extends DataProviderTestCase {
+    /** Tag for output. */
+    private static final String TAG = "TransitionTest";
+
+    /** 2012-01-02 08:00 UTC. */
+    private static final long START = 1325491200000L;
+    /** An hour. */
+    private static final long HOUR = 60L * 60L * 1000L;
+    /** Number of transitions. */
+    private static final int TRANSITIONS = 500;
+
+    /**
+     * Insert a cell.
+     *
+     * @return {@link Uri} of cell
+     */
+    private Uri insertCell() {
+        final ContentValues values = new ContentValues();
+        values.put(Cells.TYPE, Logtypes.TYPE_WORK);
+        values.put(Cells.LATITUDE, 52520000);
+        values.put(Cells.LONGITUDE, 13405000);
+        values.put(Cells.RADIUS, 100);
+        final Uri ret = this.getResolver().insert(Cells.CONTENT_URI, values);
+        assertNotNull(ret);
+        return ret;
+    }
+
+    /**
+     * Log time and allocations of transitions.
+     *
+     * @param name  kind of transitions
+     * @param start start time in nanoseconds
+     */
+    private static void logTransitions(final String name, final long start) {
+        final long d = System.nanoTime() - start;
+        Log.i(TAG, name + ": " + (d / TRANSITIONS / 1000L)
+                + "us a transition, " + (Debug.getThreadAllocCount()
+                / TRANSITIONS) + " allocations a transition");
+    }
+
+    /**
+     * Assert the state after the transitions: all logs are written, the last
+     * one is open.
+     */
+    private void assertTransitions() {
+        assertEquals(String.valueOf(TRANSITIONS), this.queryRows(
+                "SELECT count(*) FROM " + Logs.TABLE, null).get(0));
+        assertEquals(1, this.queryRows("SELECT * FROM " + CurrentState.TABLE
+                + " WHERE " + CurrentState.WHERE_OPEN, null).size());
+        this.assertConsistent();
+    }
+
+    /**
+     * Test transitions through {@link Logs#switchOpen} and
+     * {@link Logs#closeOpen}, served by the cached statements.
+     */
+    public void testCached() {
+        final Context context = this.getProviderContext();
+        final ContentResolver cr = this.getResolver();
+        final Uri cell = this.insertCell();
+        final long cellId = ContentUris.parseId(cell);
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        final long start = System.nanoTime();
+        for (int i = 0; i < TRANSITIONS; i++) {
+            final long time = START + i * HOUR;
+            if (i > 0) {
+                Logs.closeOpen(context, time, true);
+            }
+            Logs.switchOpen(context, time, Logtypes.TYPE_WORK, true);
+            final ContentValues values = new ContentValues(1);
+            values.put(Cells.SEEN_LAST, time);
+            cr.update(ContentUris.withAppendedId(Cells.CONTENT_URI, cellId),
+                    values, null, null);
+        }
+        logTransitions("cached", start);
+        Debug.stopAllocCounting();
+        this.assertTransitions();
+        assertEquals(String.valueOf(START + (TRANSITIONS - 1) * HOUR),
+                this.queryRows("SELECT " + Cells.SEEN_LAST + " FROM "
+                        + Cells.TABLE, null).get(0));
+    }
+
+    /**
+     * Test the same transitions on the generic path.
+     */
+    public void testGeneric() {
+        final ContentResolver cr = this.getResolver();
+        final Uri cell = this.insertCell();
+        final String[] byauto = new String[] { "1" };
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        final long start = System.nanoTime();
+        for (int i = 0; i < TRANSITIONS; i++) {
+            final long time = START + i * HOUR;
+            ContentValues values;
+            if (i > 0) {
+                values = new ContentValues(1);
+                values.put(Logs.TO, time);
+                cr.update(Logs.CONTENT_URI_OPEN, values, Logs.STARTBYAUTO
+                        + " = ?", byauto);
+            }
+            // the time type is looked up again
+            values = new ContentValues(4);
+            values.put(Logs.TYPE, Logtypes.TYPE_WORK);
+            values.put(Logs.TYPE_TYPE, Logtypes.TYPE_WORK);
+            values.put(Logs.FROM, time);
+            values.put(Logs.STARTBYAUTO, true);
+            cr.insert(Logs.CONTENT_URI, values);
+            // more than the seen timestamps
+            values = new ContentValues(2);
+            values.put(Cells.SEEN_LAST, time);
+            values.put(Cells.RADIUS, 100);
+            cr.update(cell, values, null, null);
+        }
+        logTransitions("generic", start);
+        Debug.stopAllocCounting();
+        this.assertTransitions();
+    }
+
+    /**
+     * Test all {@link Uri}s of {@link Logs} have a MIME type.
+     */
+    public void testGetType() {
+        final ContentResolver cr = this.getResolver();
+        assertEquals(Logs.CONTENT_TYPE, cr.getType(Logs.CONTENT_URI));
+        assertEquals(Logs.CONTENT_TYPE, cr.getType(ContentUris
+                .withAppendedId(Logs.CONTENT_URI_DAY, 1L)));
+        assertEquals(Logs.CONTENT_ITEM_TYPE, cr.getType(ContentUris
+                .withAppendedId(Logs.CONTENT_URI, 1L)));
+        assertEquals(Logs.CONTENT_ITEM_TYPE, cr.getType(Logs.CONTENT_URI_OPEN));
+        assertEquals(Logs.CONTENT_ITEM_TYPE,
+                cr.getType(Logs.CONTENT_URI_SWITCH));
+        assertEquals(Logs.CONTENT_TYPE_SUM, cr.getType(Logs.CONTENT_URI_SUM));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.data.LocationChecker;
+
+/**
+ * Measure the starts at process start: the {@link LocationChecker} handling
+ * BOOT_COMPLETED and the launcher starting {@link Logs}. The process runs
+ * already, the timings include the first database open, if no other test
+ * opened the app's database before.
+ *
+ * @author flx
+ */
+@LargeTest
+public final class ColdStartTest extends
+        ActivityInstrumentationTestCase2<Logs> {
+    /** Tag for output. */
+    private static final String TAG = "ColdStartTest";
+
+    /** Number of BOOT_COMPLETED broadcasts handled. */
+    private static final int BOOTS = 10;
+
+    /**
+     * Default constructor.
+     */
+    public ColdStartTest() {
+        super(Logs.class);
+    }
+
+    /**
+     * Measure the time {@link LocationChecker} spends on the main thread for
+     * BOOT_COMPLETED.
+     */
+    public void testBootCompleted() {
+        final Context context = this.getInstrumentation().getTargetContext();
+        final Intent intent = new Intent(Intent.ACTION_BOOT_COMPLETED);
+        final long start = System.nanoTime();
+        for (int i = 0; i < BOOTS; i++) {
+            new LocationChecker().onReceive(context, intent);
+        }
+        Log.i(TAG, "BOOT_COMPLETED: "
+                + ((System.nanoTime() - start) / BOOTS / 1000L) + "us");
+    }
+
+    /**
+     * Measure the time from starting {@link Logs} until its main thread is
+     * idle.
+     */
+    public void testLauncherStart() {
+        final long start = System.nanoTime();
+        final Logs activity = this.getActivity();
+        this.getInstrumentation().waitForIdleSync();
+        Log.i(TAG, "launcher start: "
+                + ((System.nanoTime() - start) / 1000000L) + "ms");
+        assertNotNull(activity);
+    }
+}
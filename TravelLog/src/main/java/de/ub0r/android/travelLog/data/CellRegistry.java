@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+
+import de.ub0r.android.lib.Log;
+import de.ub0r.android.travelLog.core.CellGrid;
+
+/**
+ * In memory copy of all {@link DataProvider.Cells}, indexed by a
+ * {@link CellGrid}. It is loaded on first use and dropped whenever the
+ * provider notifies a change of {@link DataProvider.Cells#CONTENT_URI}.
+ *
+ * @author flx
+ */
+public final class CellRegistry {
+
+    /**
+     * Tag for output.
+     */
+    private static final String TAG = "cr";
+
+    /**
+     * Projection used for loading.
+     */
+    private static final String[] PROJECTION = new String[]{
+            DataProvider.Cells.TABLE + "." + DataProvider.Cells.ID,
+            DataProvider.Cells.TYPE,
+            DataProvider.Cells.LATITUDE, DataProvider.Cells.LONGITUDE,
+            DataProvider.Cells.RADIUS, DataProvider.Cells.SEEN_FIRST};
+
+    /**
+     * Loaded cells.
+     */
+    public static final class Index {
+        /**
+         * Ids, ordered like {@link DataProvider.Cells#CONTENT_URI}.
+         */
+        private final long[] ids;
+        /**
+         * Types, same order as ids.
+         */
+        private final int[] types;
+        /**
+         * Latitudes * 1E6, same order as ids.
+         */
+        private final int[] latitudes;
+        /**
+         * Longitudes * 1E6, same order as ids.
+         */
+        private final int[] longitudes;
+        /**
+         * Radius in meters, same order as ids.
+         */
+        private final int[] radii;
+        /**
+         * First seen, same order as ids.
+         */
+        private final long[] seenFirst;
+        /**
+         * {@link CellGrid}.
+         */
+        private final CellGrid grid;
+
+        /**
+         * Constructor.
+         *
+         * @param cursor {@link Cursor} with PROJECTION, may be null
+         */
+        private Index(final Cursor cursor) {
+            int l = 0;
+            if (cursor != null) {
+                l = cursor.getCount();
+            }
+            this.ids = new long[l];
+            this.types = new int[l];
+            this.latitudes = new int[l];
+            this.longitudes = new int[l];
+            this.seenFirst = new long[l];
+            this.radii = new int[l];
+            if (cursor != null) {
+                int i = 0;
+                while (i < l && cursor.moveToNext()) {
+                    this.ids[i] = cursor.getLong(0);
+                    this.types[i] = cursor.getInt(1);
+                    this.latitudes[i] = cursor.getInt(2);
+                    this.longitudes[i] = cursor.getInt(3);
+                    this.radii[i] = cursor.getInt(4);
+                    this.seenFirst[i] = cursor.getLong(5);
+                    ++i;
+                }
+            }
+            this.grid = new CellGrid(this.latitudes, this.longitudes,
+                    this.radii);
+        }
+
+        /**
+         * @return number of cells
+         */
+        public int size() {
+            return this.ids.length;
+        }
+
+        /**
+         * Find the first cell containing a location.
+         *
+         * @param latitude  latitude in degrees
+         * @param longitude longitude in degrees
+         * @return position of cell, -1 if none
+         */
+        public int find(final double latitude, final double longitude) {
+            return this.grid.find(latitude, longitude);
+        }
+
+        /**
+         * Get position of a cell.
+         *
+         * @param id {@link DataProvider.Cells#ID}
+         * @return position, -1 if unknown
+         */
+        public int indexOf(final long id) {
+            final int l = this.ids.length;
+            for (int i = 0; i < l; i++) {
+                if (this.ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @param i position
+         * @return {@link DataProvider.Cells#ID}
+         */
+        public long getId(final int i) {
+            return this.ids[i];
+        }
+
+        /**
+         * @param i position
+         * @return {@link DataProvider.Cells#TYPE}
+         */
+        public int getType(final int i) {
+            return this.types[i];
+        }
+
+        /**
+         * @param i position
+         * @return {@link DataProvider.Cells#LATITUDE}
+         */
+        public int getLatitude(final int i) {
+            return this.latitudes[i];
+        }
+
+        /**
+         * @param i position
+         * @return {@link DataProvider.Cells#LONGITUDE}
+         */
+        public int getLongitude(final int i) {
+            return this.longitudes[i];
+        }
+
+        /**
+         * @param i position
+         * @return {@link DataProvider.Cells#RADIUS}
+         */
+        public int getRadius(final int i) {
+            return this.radii[i];
+        }
+
+        /**
+         * @param i position
+         * @return {@link DataProvider.Cells#SEEN_FIRST}
+         */
+        public synchronized long getSeenFirst(final int i) {
+            return this.seenFirst[i];
+        }
+
+        /**
+         * Remember {@link DataProvider.Cells#SEEN_FIRST} written by the caller.
+         * Those updates are not notified.
+         *
+         * @param i    position
+         * @param time time
+         */
+        public synchronized void setSeenFirst(final int i, final long time) {
+            this.seenFirst[i] = time;
+        }
+    }
+
+    /**
+     * Single instance.
+     */
+    private static CellRegistry instance = null;
+
+    /**
+     * {@link ContentResolver}.
+     */
+    private final ContentResolver cr;
+
+    /**
+     * Loaded cells.
+     */
+    private Index index = null;
+
+    /**
+     * Constructor.
+     *
+     * @param context {@link Context}
+     */
+    private CellRegistry(final Context context) {
+        this.cr = context.getApplicationContext().getContentResolver();
+        this.cr.registerContentObserver(DataProvider.Cells.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(final boolean selfChange) {
+                        CellRegistry.this.invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Get the {@link CellRegistry}.
+     *
+     * @param context {@link Context}
+     * @return {@link CellRegistry}
+     */
+    public static synchronized CellRegistry getInstance(final Context context) {
+        if (instance == null) {
+            instance = new CellRegistry(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Drop loaded cells.
+     */
+    private synchronized void invalidate() {
+        Log.d(TAG, "invalidate()");
+        this.index = null;
+    }
+
+    /**
+     * Get loaded cells, load them if needed.
+     *
+     * @return {@link Index}
+     */
+    public synchronized Index getIndex() {
+        if (this.index == null) {
+            Log.d(TAG, "load()");
+            final Cursor cursor = this.cr.query(
+                    DataProvider.Cells.CONTENT_URI, PROJECTION, null, null,
+                    null);
+            this.index = new Index(cursor);
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return this.index;
+    }
+}
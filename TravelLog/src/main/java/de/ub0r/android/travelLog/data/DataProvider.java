@@ -19,26 +19,40 @@
 package de.ub0r.android.travelLog.data;
 
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
+import android.content.BroadcastReceiver;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.UriMatcher;
 import android.database.Cursor;
-import android.database.SQLException;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import de.ub0r.android.lib.DbUtils;
 import de.ub0r.android.lib.Log;
+import de.ub0r.android.lib.Utils;
 import de.ub0r.android.travelLog.R;
+import de.ub0r.android.travelLog.core.TimeBuckets;
 import de.ub0r.android.travelLog.ui.Preferences;
 
 /**
@@ -59,9 +73,9 @@ public final class DataProvider extends ContentProvider {
 	public static final String AUTHORITY = PACKAGE + ".provider";
 
 	/** Name of the {@link SQLiteDatabase}. */
-	private static final String DATABASE_NAME = "travellog.db";
+	static final String DATABASE_NAME = "travellog.db";
 	/** Version of the {@link SQLiteDatabase}. */
-	private static final int DATABASE_VERSION = 2;
+	static final int DATABASE_VERSION = 11;
 
 	/** Internal id: Logs. */
 	private static final int ID_LOGS = 0;
@@ -71,6 +85,10 @@ public final class DataProvider extends ContentProvider {
 	private static final int ID_LOGSUM = 2;
 	/** Internal id: Current open log. */
 	private static final int ID_OPENLOG = 3;
+	/** Internal id: Switch open log. */
+	private static final int ID_SWITCHLOG = 4;
+	/** Internal id: Logs of a single day. */
+	private static final int ID_LOGDAY = 5;
 	/** Internal id: Log types. */
 	private static final int ID_LOGTYPES = 10;
 	/** Internal id: single log type. */
@@ -89,6 +107,8 @@ public final class DataProvider extends ContentProvider {
 		URI_MATCHER.addURI(AUTHORITY, "logs/#", ID_LOGID);
 		URI_MATCHER.addURI(AUTHORITY, "logsum", ID_LOGSUM);
 		URI_MATCHER.addURI(AUTHORITY, "openlog", ID_OPENLOG);
+		URI_MATCHER.addURI(AUTHORITY, "switchlog", ID_SWITCHLOG);
+		URI_MATCHER.addURI(AUTHORITY, "logs/day/#", ID_LOGDAY);
 		URI_MATCHER.addURI(AUTHORITY, "logtypes", ID_LOGTYPES);
 		URI_MATCHER.addURI(AUTHORITY, "logtypes/#", ID_LOGTYPEID);
 		URI_MATCHER.addURI(AUTHORITY, "cells", ID_CELLS);
@@ -108,6 +128,9 @@ public final class DataProvider extends ContentProvider {
 	 * This class helps open, create, and upgrade the database file.
 	 */
 	private static class DatabaseHelper extends SQLiteOpenHelper {
+		/** {@link Context}. */
+		private final Context context;
+
 		/**
 		 * Default Constructor.
 		 * 
@@ -116,6 +139,7 @@ public final class DataProvider extends ContentProvider {
 		 */
 		DatabaseHelper(final Context context) {
 			super(context, DATABASE_NAME, null, DATABASE_VERSION);
+			this.context = context;
 		}
 
 		/**
@@ -127,6 +151,31 @@ public final class DataProvider extends ContentProvider {
 			Logs.onCreate(db);
 			Logtypes.onCreate(db);
 			Cells.onCreate(db);
+			DailySummary.onCreate(db);
+			CurrentState.onCreate(db);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onOpen(final SQLiteDatabase db) {
+			super.onOpen(db);
+			// let the UI read while LocationChecker is writing. Older devices
+			// stay with the rollback journal.
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+					&& !db.isReadOnly()) {
+				Log.d(TAG, "enable WAL: " + db.enableWriteAheadLogging());
+			}
+			if (!db.isReadOnly()) {
+				db.beginTransaction();
+				try {
+					this.init(db);
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+			}
 		}
 
 		/**
@@ -136,10 +185,65 @@ public final class DataProvider extends ContentProvider {
 		public void onUpgrade(final SQLiteDatabase db, final int oldVersion,
 				final int newVersion) {
 			Log.w(TAG, "Upgrading database from version " + oldVersion + " to "
-					+ newVersion + ", which will destroy all old data");
+					+ newVersion);
+			// SQLiteOpenHelper runs all steps in a single transaction
 			Logs.onUpgrade(db, oldVersion, newVersion);
 			Logtypes.onUpgrade(db, oldVersion, newVersion);
 			Cells.onUpgrade(db, oldVersion, newVersion);
+			DailySummary.onUpgrade(db, oldVersion, newVersion);
+			CurrentState.onUpgrade(db, oldVersion, newVersion);
+		}
+
+		/**
+		 * Insert default {@link Logtypes} if there are none, as the app always
+		 * did, and import logs saved by old versions in
+		 * {@link SharedPreferences}. The import removes its preference. Runs
+		 * each time the database is opened, that is once a process on first
+		 * access, and costs a count of {@link Logtypes} and a preference read.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		private void init(final SQLiteDatabase db) {
+			if (DatabaseUtils.queryNumEntries(db, Logtypes.TABLE) == 0L) {
+				Log.i(TAG, "insert default types");
+				ContentValues values = new ContentValues();
+				values.put(Logtypes.NAME,
+						this.context.getString(R.string.pause));
+				values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_PAUSE);
+				values.put(Logtypes.ID, Logtypes.TYPE_PAUSE);
+				db.insert(Logtypes.TABLE, null, values);
+				values = new ContentValues();
+				values.put(Logtypes.NAME,
+						this.context.getString(R.string.travel));
+				values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_TRAVEL);
+				values.put(Logtypes.ID, Logtypes.TYPE_TRAVEL);
+				db.insert(Logtypes.TABLE, null, values);
+				values = new ContentValues();
+				values.put(Logtypes.NAME,
+						this.context.getString(R.string.work));
+				values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_WORK);
+				values.put(Logtypes.ID, Logtypes.TYPE_WORK);
+				db.insert(Logtypes.TABLE, null, values);
+			}
+			final SharedPreferences p = PreferenceManager
+					.getDefaultSharedPreferences(this.context);
+			final int l = p.getInt(PREFS_LISTCOUNT, 0);
+			for (int i = 0; i < l; i++) {
+				Log.i(TAG, "migrate old data: " + i);
+				final ContentValues values = new ContentValues();
+				values.put(Logs.FROM, p.getLong(PREFS_LIST_START + i, 0));
+				values.put(Logs.TO, p.getLong(PREFS_LIST_STOP + i, 0));
+				values.put(Logs.TYPE, p.getInt(PREFS_LIST_TYPE + i, 0));
+				Logs.fixValues(values);
+				Logs.fixTimeType(db, values);
+				db.insert(Logs.TABLE, null, values);
+			}
+			if (l > 0) {
+				DailySummary.rebuild(db, null);
+				CurrentState.update(db);
+				p.edit().remove(PREFS_LISTCOUNT).commit();
+			}
 		}
 	}
 
@@ -152,9 +256,6 @@ public final class DataProvider extends ContentProvider {
 		/** Table name. */
 		static final String TABLE = "logs";
 
-		/** Milliseconds per minute. */
-		private static final long MILLIS_A_MINUTE = 60000;
-
 		/** {@link HashMap} for projection. */
 		private static final HashMap<String, String> PROJECTION_MAP;
 
@@ -172,6 +273,12 @@ public final class DataProvider extends ContentProvider {
 		public static final String FROM_W = "_from_w";
 		/** From date (day). */
 		public static final String FROM_D = "_from_d";
+		/** From date (local days since epoch). */
+		public static final String FROM_ED = "_from_ed";
+		/** From date (local weeks since epoch). */
+		public static final String FROM_EW = "_from_ew";
+		/** From date (local months since epoch). */
+		public static final String FROM_EM = "_from_em";
 		/** To date. */
 		public static final String TO = "_to";
 		/** Comment. */
@@ -182,7 +289,10 @@ public final class DataProvider extends ContentProvider {
 		public static final String TYPE_ID = "_type_id";
 		/** Type's name. */
 		public static final String TYPE_NAME = "_type_name";
-		/** Type's type. */
+		/**
+		 * Type's type. Copy of the {@link Logtypes#TIME_TYPE} of
+		 * {@link #TYPE}, kept in sync by the provider.
+		 */
 		public static final String TYPE_TYPE = "_type_type";
 		/** Sum of work. */
 		public static final String SUM_WORK = "_sum_work";
@@ -191,6 +301,46 @@ public final class DataProvider extends ContentProvider {
 		/** Sum of pause. */
 		public static final String SUM_PAUSE = "_sum_pause";
 
+		/** Query parameter: maximal number of rows. */
+		public static final String PARAM_LIMIT = "limit";
+		/** Query parameter: rows of days before this {@link #FROM_ED}. */
+		public static final String PARAM_BEFORE_DAY = "before_day";
+		/**
+		 * Query parameter: with {@link #PARAM_BEFORE_DAY} also rows of that day
+		 * started before this {@link #FROM}.
+		 */
+		public static final String PARAM_BEFORE_FROM = "before_from";
+		/**
+		 * Query parameter: with {@link #PARAM_BEFORE_FROM} also rows started
+		 * at that time with a lower {@link #ID}.
+		 */
+		public static final String PARAM_BEFORE_ID = "before_id";
+
+		/**
+		 * Method for {@link ContentProvider#call}: sums of a range of days.
+		 * Returns {@link #SUM_WORK}, {@link #SUM_TRAVEL} and
+		 * {@link #SUM_PAUSE} including the running open log.
+		 */
+		public static final String METHOD_SUMS = "sums";
+		/**
+		 * Method for {@link ContentProvider#call}: the newest open log.
+		 * Returns the columns of {@link #PROJECTION_OPEN}, nothing if no log
+		 * is open. With {@link #EXTRA_DAY} and {@link #EXTRA_TIME_TYPES} set,
+		 * the newest open log of one of the time types started that day.
+		 */
+		public static final String METHOD_OPEN = "open";
+		/** Extra for {@link #METHOD_SUMS}: first day, {@link #FROM_ED}. */
+		public static final String EXTRA_FIRST_DAY = "first_day";
+		/** Extra for {@link #METHOD_SUMS}: last day, {@link #FROM_ED}. */
+		public static final String EXTRA_LAST_DAY = "last_day";
+		/** Extra for {@link #METHOD_OPEN}: day, {@link #FROM_ED}. */
+		public static final String EXTRA_DAY = "day";
+		/**
+		 * Extra for {@link #METHOD_OPEN}: int array of
+		 * {@link Logtypes#TIME_TYPE}s.
+		 */
+		public static final String EXTRA_TIME_TYPES = "time_types";
+
 		/** Joined {@link Logs} with {@link Logtypes}. */
 		private static final String JOIN_LOGTYPES = Logs.TABLE
 				+ " LEFT OUTER JOIN " + Logtypes.TABLE + " ON (" + Logs.TABLE
@@ -199,53 +349,102 @@ public final class DataProvider extends ContentProvider {
 		/** Where clause for open log entries. */
 		private static final String WHERE_OPEN = "(" + TO + " = 0 OR " + TO
 				+ " is NULL)";
+		/** Where clause for log entries opened by automation. */
+		private static final String WHERE_BYAUTO = STARTBYAUTO + " = 1";
+		/** Columns set by {@link Statements#insertLog}. */
+		private static final String[] INSERT_COLUMNS = new String[] { TYPE,
+				FROM, FROM_Y, FROM_M, FROM_W, FROM_D, FROM_ED, FROM_EW,
+				FROM_EM, TO, COMMENT, STARTBYAUTO };
 
 		/** Projection used for query. */
 		public static final String[] PROJECTION = new String[] { // .
 		TABLE + "." + ID + " AS " + ID, TYPE, FROM, FROM_Y, FROM_M, FROM_W,
-				FROM_D, TO, COMMENT, STARTBYAUTO,
+				FROM_D, FROM_ED, FROM_EW, FROM_EM, TO, COMMENT, STARTBYAUTO,
 				Logtypes.TABLE + "." + Logtypes.ID + " AS " + TYPE_ID,
 				Logtypes.TABLE + "." + Logtypes.NAME + " AS " + TYPE_NAME,
-				Logtypes.TABLE + "." + Logtypes.TIME_TYPE // .
-						+ " AS " + TYPE_TYPE };
+				TYPE_TYPE };
+		/**
+		 * Projection without {@link Logtypes} columns. Queries using it skip
+		 * the join, resolve the type with {@link LogtypeRegistry}. The
+		 * {@link #ID} is qualified, a selection or sort order may still
+		 * force the join.
+		 */
+		public static final String[] PROJECTION_PLAIN = new String[] { // .
+		TABLE + "." + ID, TYPE, FROM, FROM_Y, FROM_M, FROM_W, FROM_D, FROM_ED,
+				FROM_EW, FROM_EM, TO, COMMENT, STARTBYAUTO, TYPE_TYPE };
+		/** Projection holding the interval only. */
+		public static final String[] PROJECTION_INTERVAL = new String[] {
+				TABLE + "." + ID, FROM, TO };
+		/**
+		 * Projection holding the open state, see {@link CurrentState}. The
+		 * {@link #ID} is not qualified, it is read from {@link CurrentState}
+		 * as well.
+		 */
+		public static final String[] PROJECTION_OPEN = new String[] { ID,
+				TYPE, TYPE_TYPE, FROM, FROM_ED, STARTBYAUTO };
+		/** Projection holding all fields editable in the UI. */
+		public static final String[] PROJECTION_EDIT = new String[] {
+				TABLE + "." + ID, TYPE, FROM, TO, COMMENT };
+		/**
+		 * Projection for loading the logs of several days at once, like
+		 * {@link #PROJECTION_EDIT} followed by {@link #FROM_ED}.
+		 */
+		public static final String[] PROJECTION_DAYS = new String[] {
+				TABLE + "." + ID, TYPE, FROM, TO, COMMENT, FROM_ED };
 
-		/** Projection used for query. */
+		/**
+		 * Projection used for query on {@link #CONTENT_URI_SUM}. Sums are read
+		 * from {@link DailySummary} and the running duration of an open log is
+		 * added on top. The provider binds the current time to each "?", so
+		 * the statement's text does not change between queries.
+		 */
 		public static final String[] PROJECTION_SUM = new String[] { // .
 				ID,
-				"min(" + FROM + ") AS " + FROM,
+				FROM,
 				FROM_Y,
 				FROM_M,
 				FROM_W,
 				FROM_D,
-				"max(" + TO + ") AS " + TO,
-				"(select sum(COALESCE(" + TO + ",?) - " + FROM + ") from "
-						+ TABLE + " AS INNERLOGSW where INNERLOGSW." + FROM_D
-						+ " = " + TABLE + "." + FROM_D + " AND INNERLOGSW."
-						+ TYPE + " in ( select " + Logtypes.ID + " from "
-						+ Logtypes.TABLE + " where " + Logtypes.TIME_TYPE
-						+ " = " + Logtypes.TYPE_WORK + ")) AS " + SUM_WORK,
-				"(select sum(COALESCE(" + TO + ",?) - " + FROM + ") from "
-						+ TABLE + " AS INNERLOGSW where INNERLOGSW." + FROM_D
-						+ " = " + TABLE + "." + FROM_D + " AND INNERLOGSW."
-						+ TYPE + " in ( select " + Logtypes.ID + " from "
-						+ Logtypes.TABLE + " where " + Logtypes.TIME_TYPE
-						+ " = " + Logtypes.TYPE_TRAVEL + ")) AS " + SUM_TRAVEL,
-				"(select sum(COALESCE(" + TO + ",?) - " + FROM + ") from "
-						+ TABLE + " AS INNERLOGSW where INNERLOGSW." + FROM_D
-						+ " = " + TABLE + "." + FROM_D + " AND INNERLOGSW."
-						+ TYPE + " in ( select " + Logtypes.ID + " from "
-						+ Logtypes.TABLE + " where " + Logtypes.TIME_TYPE
-						+ " = " + Logtypes.TYPE_PAUSE + ")) AS " + SUM_PAUSE };
+				FROM_ED,
+				FROM_EW,
+				FROM_EM,
+				TO,
+				DailySummary.getLiveSum(SUM_WORK, Logtypes.TYPE_WORK),
+				DailySummary.getLiveSum(SUM_TRAVEL, Logtypes.TYPE_TRAVEL),
+				DailySummary.getLiveSum(SUM_PAUSE, Logtypes.TYPE_PAUSE) };
 
-		/** Content {@link Uri}. */
+		/**
+		 * Content {@link Uri}. Changes are notified on the days they touch,
+		 * see {@link #CONTENT_URI_DAY}. The item {@link Uri} of a log is
+		 * notified only for inserts and for updates and deletes through that
+		 * item {@link Uri}; writes with a selection on this {@link Uri} or on
+		 * {@link #CONTENT_URI_OPEN} do not notify the single logs they
+		 * touch. Observe this {@link Uri} with descendants or the day to see
+		 * all changes.
+		 */
 		public static final Uri CONTENT_URI = Uri.parse("content://"
 				+ AUTHORITY + "/logs");
 		/** Content {@link Uri}. */
 		public static final Uri CONTENT_URI_SUM = Uri.parse("content://"
 				+ AUTHORITY + "/logsum");
-		/** Content {@link Uri}. */
+		/**
+		 * Content {@link Uri} for the newest open log, served by
+		 * {@link CurrentState}. Query it with {@link #PROJECTION_OPEN}.
+		 */
 		public static final Uri CONTENT_URI_OPEN = Uri.parse("content://"
 				+ AUTHORITY + "/openlog");
+		/**
+		 * Content {@link Uri} for logs of a single day, append the
+		 * {@link #FROM_ED}. Changes of logs are notified on it.
+		 */
+		public static final Uri CONTENT_URI_DAY = Uri.parse("content://"
+				+ AUTHORITY + "/logs/day");
+		/**
+		 * Insert only {@link Uri}: close all open logs and open a new one in a
+		 * single transaction. See switchOpen().
+		 */
+		public static final Uri CONTENT_URI_SWITCH = Uri.parse("content://"
+				+ AUTHORITY + "/switchlog");
 
 		/**
 		 * The MIME type of {@link #CONTENT_URI} providing a list.
@@ -259,6 +458,12 @@ public final class DataProvider extends ContentProvider {
 		public static final String CONTENT_ITEM_TYPE = // .
 		"vnd.android.cursor.item/vnd.ub0r.logs";
 
+		/**
+		 * The MIME type of {@link #CONTENT_URI_SUM} providing a list of days.
+		 */
+		public static final String CONTENT_TYPE_SUM = // .
+		"vnd.android.cursor.dir/vnd.ub0r.logsum";
+
 		static {
 			PROJECTION_MAP = new HashMap<String, String>();
 			for (String s : PROJECTION) {
@@ -278,15 +483,48 @@ public final class DataProvider extends ContentProvider {
 			db.execSQL("CREATE TABLE " + TABLE + " (" // .
 					+ ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " // .
 					+ TYPE + " INTEGER,"// .
+					+ TYPE_TYPE + " INTEGER,"// .
 					+ FROM + " LONG,"// .
 					+ FROM_Y + " INTEGER,"// .
 					+ FROM_M + " INTEGER,"// .
 					+ FROM_W + " INTEGER,"// .
 					+ FROM_D + " INTEGER,"// .
+					+ FROM_ED + " INTEGER,"// .
+					+ FROM_EW + " INTEGER,"// .
+					+ FROM_EM + " INTEGER,"// .
 					+ TO + " LONG,"// .
 					+ COMMENT + " TEXT,"// .
 					+ STARTBYAUTO + " INTEGER"// .
 					+ ");");
+			createIndexes(db);
+		}
+
+		/**
+		 * Create indexes for all access paths on {@link Logs}. Joins on
+		 * {@link #TYPE} look up {@link Logtypes} by their primary key and need
+		 * no index here.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		static void createIndexes(final SQLiteDatabase db) {
+			// logs/day/#, pages of days ordered by FROM_ED DESC, FROM DESC,
+			// the logs of a page's days and the days summed up by
+			// DailySummary.rebuild()
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_day_idx ON "
+					+ TABLE + " (" + FROM_ED + ", " + FROM + ")");
+			// logs ordered by FROM without a day, e.g. the export
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_from_idx ON "
+					+ TABLE + " (" + FROM + ")");
+			// WHERE_OPEN: Statements closing and switching open logs and
+			// CurrentState.update()
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_to_idx ON "
+					+ TABLE + " (" + TO + ")");
+			// running logs of a day by time type, covering the subquery of
+			// DailySummary.getLiveSum() run for each row of CONTENT_URI_SUM
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE
+					+ "_timetype_idx ON " + TABLE + " (" + FROM_ED + ", "
+					+ TYPE_TYPE + ", " + TO + ", " + FROM + ")");
 		}
 
 		/**
@@ -302,9 +540,72 @@ public final class DataProvider extends ContentProvider {
 		public static void onUpgrade(final SQLiteDatabase db,
 				final int oldVersion, final int newVersion) {
 			Log.w(TAG, "Upgrading table: " + TABLE);
-			final ContentValues[] values = backup(db, TABLE, PROJECTION, null);
-			onCreate(db);
-			reload(db, TABLE, values);
+			if (oldVersion < 2) {
+				final String backup = backupTable(db, TABLE);
+				onCreate(db);
+				restoreTable(db, backup, TABLE);
+			}
+			if (oldVersion < 5) {
+				addColumn(db, TABLE, FROM_ED, "INTEGER");
+				addColumn(db, TABLE, FROM_EW, "INTEGER");
+				addColumn(db, TABLE, FROM_EM, "INTEGER");
+				fillEpochBuckets(db);
+				// the day index moved to FROM_ED
+				db.execSQL("DROP INDEX IF EXISTS " + TABLE + "_day_idx");
+			}
+			if (oldVersion < 6) {
+				// filled by Logtypes.onUpgrade()
+				addColumn(db, TABLE, TYPE_TYPE, "INTEGER");
+			}
+			if (oldVersion < 9) {
+				// nothing filters on TYPE, joins use the primary key of
+				// Logtypes
+				db.execSQL("DROP INDEX IF EXISTS " + TABLE + "_type_idx");
+			}
+			createIndexes(db);
+		}
+
+		/**
+		 * Set {@link #TYPE_TYPE} of all {@link Logs} whose log type's
+		 * {@link Logtypes#TIME_TYPE} differs.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		static void syncTimeType(final SQLiteDatabase db) {
+			final String timeType = "(SELECT " + Logtypes.TABLE + "."
+					+ Logtypes.TIME_TYPE + " FROM " + Logtypes.TABLE
+					+ " WHERE " + Logtypes.TABLE + "." + Logtypes.ID + " = "
+					+ TABLE + "." + TYPE + ")";
+			db.execSQL("UPDATE " + TABLE + " SET " + TYPE_TYPE + " = "
+					+ timeType + " WHERE " + TYPE_TYPE + " IS NOT " + timeType);
+		}
+
+		/**
+		 * Set {@link #TYPE_TYPE} in {@link ContentValues} holding a
+		 * {@link #TYPE}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 * @param values
+		 *            {@link ContentValues}
+		 */
+		static void fixTimeType(final SQLiteDatabase db,
+				final ContentValues values) {
+			values.remove(TYPE_TYPE);
+			if (!values.containsKey(TYPE)) {
+				return;
+			}
+			final Cursor cursor = db.query(Logtypes.TABLE,
+					new String[] { Logtypes.TIME_TYPE }, Logtypes.ID + " = ?",
+					new String[] { values.getAsString(TYPE) }, null, null,
+					null);
+			if (cursor.moveToFirst() && !cursor.isNull(0)) {
+				values.put(TYPE_TYPE, cursor.getInt(0));
+			} else {
+				values.putNull(TYPE_TYPE);
+			}
+			cursor.close();
 		}
 
 		/** Default constructor. */
@@ -326,12 +627,172 @@ public final class DataProvider extends ContentProvider {
 			} else {
 				from = values.getAsLong(Logs.FROM);
 			}
-			Calendar cal = Calendar.getInstance();
-			cal.setTimeInMillis(from);
-			values.put(Logs.FROM_Y, cal.get(Calendar.YEAR));
-			values.put(Logs.FROM_M, cal.get(Calendar.MONTH));
-			values.put(Logs.FROM_W, cal.get(Calendar.WEEK_OF_YEAR));
-			values.put(Logs.FROM_D, cal.get(Calendar.DAY_OF_YEAR));
+			final long[] b = new long[TimeBuckets.SIZE];
+			TimeBuckets.getDefault().get(from, b);
+			values.put(Logs.FROM_Y, (int) b[TimeBuckets.YEAR]);
+			values.put(Logs.FROM_M, (int) b[TimeBuckets.MONTH]);
+			values.put(Logs.FROM_W, (int) b[TimeBuckets.WEEK_OF_YEAR]);
+			values.put(Logs.FROM_D, (int) b[TimeBuckets.DAY_OF_YEAR]);
+			values.put(Logs.FROM_ED, b[TimeBuckets.EPOCH_DAY]);
+			values.put(Logs.FROM_EW, b[TimeBuckets.EPOCH_WEEK]);
+			values.put(Logs.FROM_EM, b[TimeBuckets.EPOCH_MONTH]);
+		}
+
+		/**
+		 * Fill {@link #FROM_ED}, {@link #FROM_EW} and {@link #FROM_EM} of all
+		 * logs with {@link TimeBuckets}, like fixValues() does for new logs.
+		 * SQLite's 'localtime' follows the C library's time zone, which may
+		 * differ from the JVM's.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		private static void fillEpochBuckets(final SQLiteDatabase db) {
+			final TimeBuckets buckets = TimeBuckets.getDefault();
+			final long[] b = new long[TimeBuckets.SIZE];
+			final SQLiteStatement stmt = db.compileStatement("UPDATE "
+					+ TABLE + " SET " + FROM_ED + " = ?, " + FROM_EW
+					+ " = ?, " + FROM_EM + " = ? WHERE " + ID + " = ?");
+			final Cursor cursor = db.query(TABLE,
+					new String[] { ID, FROM }, FROM + " NOT NULL", null, null,
+					null, null);
+			try {
+				while (cursor.moveToNext()) {
+					buckets.get(cursor.getLong(1), b);
+					stmt.bindLong(1, b[TimeBuckets.EPOCH_DAY]);
+					stmt.bindLong(2, b[TimeBuckets.EPOCH_WEEK]);
+					stmt.bindLong(3, b[TimeBuckets.EPOCH_MONTH]);
+					stmt.bindLong(4, cursor.getLong(0));
+					stmt.execute();
+				}
+			} finally {
+				cursor.close();
+				stmt.close();
+			}
+		}
+
+		/**
+		 * Get local days since epoch. Those are used for {@link #FROM_ED}.
+		 * 
+		 * @param time
+		 *            time in milliseconds
+		 * @return days since 1970-01-01 in local time zone
+		 */
+		public static long getEpochDay(final long time) {
+			return TimeBuckets.getDefault().getEpochDay(time);
+		}
+
+		/**
+		 * Get {@link Uri} for a single page of {@link #CONTENT_URI} or
+		 * {@link #CONTENT_URI_SUM}. Pages are sorted by day, start time and
+		 * {@link #ID}, newest first.
+		 * 
+		 * @param uri
+		 *            {@link #CONTENT_URI} or {@link #CONTENT_URI_SUM}
+		 * @param limit
+		 *            maximal number of rows
+		 * @param beforeDay
+		 *            last {@link #FROM_ED} of the previous page, -1 for the
+		 *            first page
+		 * @param beforeFrom
+		 *            last {@link #FROM} of the previous page, -1 to skip the
+		 *            rest of beforeDay
+		 * @param beforeId
+		 *            last {@link #ID} of the previous page, ignored if
+		 *            beforeFrom is -1
+		 * @return {@link Uri}
+		 */
+		public static Uri getPageUri(final Uri uri, final int limit,
+				final long beforeDay, final long beforeFrom,
+				final long beforeId) {
+			final Uri.Builder b = uri.buildUpon();
+			b.appendQueryParameter(PARAM_LIMIT, String.valueOf(limit));
+			if (beforeDay >= 0L) {
+				b.appendQueryParameter(PARAM_BEFORE_DAY,
+						String.valueOf(beforeDay));
+				if (beforeFrom >= 0L) {
+					b.appendQueryParameter(PARAM_BEFORE_FROM,
+							String.valueOf(beforeFrom));
+					b.appendQueryParameter(PARAM_BEFORE_ID,
+							String.valueOf(beforeId));
+				}
+			}
+			return b.build();
+		}
+
+		/**
+		 * Get limit set by {@link #getPageUri(Uri, int, long, long, long)}.
+		 * 
+		 * @param uri
+		 *            {@link Uri}
+		 * @return limit, null for no limit
+		 */
+		static String getLimit(final Uri uri) {
+			final long limit = Utils.parseLong(
+					uri.getQueryParameter(PARAM_LIMIT), 0L);
+			if (limit <= 0L) {
+				return null;
+			}
+			return String.valueOf(limit);
+		}
+
+		/**
+		 * Get where clause for page set by
+		 * {@link #getPageUri(Uri, int, long, long, long)}.
+		 * 
+		 * @param uri
+		 *            {@link Uri}
+		 * @param dayColumn
+		 *            column holding the day
+		 * @param fromColumn
+		 *            column holding the start time, null if rows are days
+		 * @param idColumn
+		 *            column holding the row's id, breaking ties of start times
+		 * @return where clause, null for first page
+		 */
+		static String getWherePage(final Uri uri, final String dayColumn,
+				final String fromColumn, final String idColumn) {
+			final long day = Utils.parseLong(
+					uri.getQueryParameter(PARAM_BEFORE_DAY), -1L);
+			if (day < 0L) {
+				return null;
+			}
+			final long from = Utils.parseLong(
+					uri.getQueryParameter(PARAM_BEFORE_FROM), -1L);
+			if (from < 0L || fromColumn == null) {
+				return dayColumn + " < " + day;
+			}
+			final long id = Utils.parseLong(
+					uri.getQueryParameter(PARAM_BEFORE_ID), -1L);
+			return "(" + dayColumn + " < " + day + " OR (" + dayColumn + " = "
+					+ day + " AND (" + fromColumn + " < " + from + " OR ("
+					+ fromColumn + " = " + from + " AND " + idColumn + " < "
+					+ id + "))))";
+		}
+
+		/**
+		 * Get days of all {@link Logs} matching the where clause.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 * @param where
+		 *            where clause
+		 * @param args
+		 *            where arguments
+		 * @param days
+		 *            {@link Set} the days are added to
+		 */
+		static void getDays(final SQLiteDatabase db, final String where,
+				final String[] args, final Set<Long> days) {
+			final Cursor cursor = db.query(true, TABLE,
+					new String[] { FROM_ED }, where, args, null, null, null,
+					null);
+			if (cursor.moveToFirst()) {
+				do {
+					days.add(cursor.getLong(0));
+				} while (cursor.moveToNext());
+			}
+			cursor.close();
 		}
 
 		/**
@@ -354,12 +815,235 @@ public final class DataProvider extends ContentProvider {
 			values.put(TO, roundTime(context, d));
 			String where = null;
 			if (byauto) {
-				where = STARTBYAUTO + " = 1";
+				where = WHERE_BYAUTO;
 			}
 			context.getContentResolver().update(
 					DataProvider.Logs.CONTENT_URI_OPEN, values, where, null);
 		}
 
+		/**
+		 * Get the tables to query. {@link Logtypes} is joined only if the
+		 * query refers to its columns.
+		 * 
+		 * @param projection
+		 *            projection
+		 * @param selection
+		 *            selection
+		 * @param sortOrder
+		 *            sort order
+		 * @return {@link #TABLE} or {@link #JOIN_LOGTYPES}
+		 */
+		private static String getTables(final String[] projection,
+				final String selection, final String sortOrder) {
+			if (projection == null || needsLogtypes(selection)
+					|| needsLogtypes(sortOrder)) {
+				return JOIN_LOGTYPES;
+			}
+			for (String p : projection) {
+				if (needsLogtypes(p)) {
+					return JOIN_LOGTYPES;
+				}
+			}
+			return TABLE;
+		}
+
+		/**
+		 * Check if a part of a query refers to {@link Logtypes}.
+		 * 
+		 * @param s
+		 *            part of a query
+		 * @return true, if {@link #JOIN_LOGTYPES} is needed
+		 */
+		private static boolean needsLogtypes(final String s) {
+			return s != null
+					&& (s.contains(TYPE_ID) || s.contains(TYPE_NAME) || s
+							.contains(Logtypes.TABLE + "."));
+		}
+
+		/**
+		 * Get {@link Uri} of a day's logs.
+		 * 
+		 * @param day
+		 *            day, see {@link #FROM_ED}
+		 * @return {@link Uri}
+		 */
+		public static Uri getDayUri(final long day) {
+			return ContentUris.withAppendedId(CONTENT_URI_DAY, day);
+		}
+
+		/**
+		 * Get the sums of a range of days. Uses {@link #METHOD_SUMS} where
+		 * available.
+		 * 
+		 * @param context
+		 *            {@link Context}
+		 * @param firstDay
+		 *            first day, see {@link #FROM_ED}
+		 * @param lastDay
+		 *            last day, see {@link #FROM_ED}
+		 * @return {@link Bundle} holding {@link #SUM_WORK},
+		 *         {@link #SUM_TRAVEL} and {@link #SUM_PAUSE}
+		 */
+		public static Bundle getSums(final Context context,
+				final long firstDay, final long lastDay) {
+			final ContentResolver cr = context.getContentResolver();
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				final Bundle extras = new Bundle();
+				extras.putLong(EXTRA_FIRST_DAY, firstDay);
+				extras.putLong(EXTRA_LAST_DAY, lastDay);
+				return cr.call(CONTENT_URI, METHOD_SUMS, null, extras);
+			}
+			long work = 0L;
+			long travel = 0L;
+			long pause = 0L;
+			final Cursor cursor = cr.query(CONTENT_URI_SUM, PROJECTION_SUM,
+					DailySummary.ID + " BETWEEN ? AND ?", new String[] {
+							String.valueOf(firstDay), String.valueOf(lastDay) },
+					null);
+			if (cursor.moveToFirst()) {
+				final int idWork = cursor.getColumnIndex(SUM_WORK);
+				final int idTravel = cursor.getColumnIndex(SUM_TRAVEL);
+				final int idPause = cursor.getColumnIndex(SUM_PAUSE);
+				do {
+					work += cursor.getLong(idWork);
+					travel += cursor.getLong(idTravel);
+					pause += cursor.getLong(idPause);
+				} while (cursor.moveToNext());
+			}
+			cursor.close();
+			final Bundle ret = new Bundle();
+			ret.putLong(SUM_WORK, work);
+			ret.putLong(SUM_TRAVEL, travel);
+			ret.putLong(SUM_PAUSE, pause);
+			return ret;
+		}
+
+		/**
+		 * Get the open log. Uses {@link #METHOD_OPEN} where available.
+		 * 
+		 * @param context
+		 *            {@link Context}
+		 * @return {@link Bundle} holding the columns of
+		 *         {@link #PROJECTION_OPEN}, empty if no log is open
+		 */
+		public static Bundle getOpen(final Context context) {
+			final ContentResolver cr = context.getContentResolver();
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				return cr.call(CONTENT_URI, METHOD_OPEN, null, null);
+			}
+			final Cursor cursor = cr.query(CONTENT_URI_OPEN, PROJECTION_OPEN,
+					null, null, null);
+			final Bundle ret = getOpen(cursor);
+			cursor.close();
+			return ret;
+		}
+
+		/**
+		 * Get the newest open log of some time types started on a day, like
+		 * the logs counted for warnings. Uses {@link #METHOD_OPEN} where
+		 * available.
+		 * 
+		 * @param context
+		 *            {@link Context}
+		 * @param day
+		 *            day, see {@link #FROM_ED}
+		 * @param timeTypes
+		 *            {@link Logtypes#TIME_TYPE}s
+		 * @return {@link Bundle} holding the columns of
+		 *         {@link #PROJECTION_OPEN}, empty if no such log is open
+		 */
+		public static Bundle getOpen(final Context context, final long day,
+				final int[] timeTypes) {
+			final ContentResolver cr = context.getContentResolver();
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+				final Bundle extras = new Bundle();
+				extras.putLong(EXTRA_DAY, day);
+				extras.putIntArray(EXTRA_TIME_TYPES, timeTypes);
+				return cr.call(CONTENT_URI, METHOD_OPEN, null, extras);
+			}
+			final Cursor cursor = cr.query(CONTENT_URI, PROJECTION_OPEN,
+					getWhereOpen(day, timeTypes), null, FROM + " DESC");
+			final Bundle ret = getOpen(cursor);
+			cursor.close();
+			return ret;
+		}
+
+		/**
+		 * Get where clause matching open logs of some time types started on a
+		 * day.
+		 * 
+		 * @param day
+		 *            day, see {@link #FROM_ED}
+		 * @param timeTypes
+		 *            {@link Logtypes#TIME_TYPE}s
+		 * @return where clause
+		 */
+		private static String getWhereOpen(final long day,
+				final int[] timeTypes) {
+			final StringBuilder sb = new StringBuilder(WHERE_OPEN);
+			sb.append(" AND " + FROM_ED + " = " + day + " AND " + TYPE_TYPE
+					+ " IN (");
+			for (int i = 0; i < timeTypes.length; i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(timeTypes[i]);
+			}
+			sb.append(")");
+			return sb.toString();
+		}
+
+		/**
+		 * Read the open log from a {@link Cursor}.
+		 * 
+		 * @param cursor
+		 *            {@link Cursor} with {@link #PROJECTION_OPEN}, latest
+		 *            first
+		 * @return {@link Bundle}, empty if the {@link Cursor} is empty
+		 */
+		public static Bundle getOpen(final Cursor cursor) {
+			final Bundle ret = new Bundle();
+			if (cursor.moveToFirst()) {
+				ret.putLong(ID, cursor.getLong(0));
+				ret.putInt(TYPE, cursor.getInt(1));
+				if (!cursor.isNull(2)) {
+					ret.putInt(TYPE_TYPE, cursor.getInt(2));
+				}
+				ret.putLong(FROM, cursor.getLong(3));
+				ret.putLong(FROM_ED, cursor.getLong(4));
+				ret.putBoolean(STARTBYAUTO, cursor.getInt(5) == 1);
+			}
+			return ret;
+		}
+
+		/**
+		 * Close all open {@link Logs} and open a new one. Nothing is changed if
+		 * a log of the same type is open already.
+		 * 
+		 * @param context
+		 *            {@link Context}
+		 * @param date
+		 *            date for TO and FROM.
+		 * @param type
+		 *            type, 0 to close open logs only
+		 * @param byauto
+		 *            opened by automation
+		 * @return {@link Uri} of the open log, null if no log is open
+		 */
+		public static Uri switchOpen(final Context context, final long date,
+				final int type, final boolean byauto) {
+			long d = date;
+			if (date <= 0L) {
+				d = System.currentTimeMillis();
+			}
+			final ContentValues values = new ContentValues(3);
+			values.put(FROM, roundTime(context, d));
+			values.put(TYPE, type);
+			values.put(STARTBYAUTO, byauto);
+			return context.getContentResolver().insert(
+					DataProvider.Logs.CONTENT_URI_SWITCH, values);
+		}
+
 		/**
 		 * Open new {@link Logs}.
 		 * 
@@ -396,23 +1080,8 @@ public final class DataProvider extends ContentProvider {
 		 * @return rounded time
 		 */
 		private static long roundTime(final Context context, final long time) {
-			final int roundTo = Preferences.getRound(context);
-			if (roundTo == 0) {
-				return time;
-			}
-			long m = time / MILLIS_A_MINUTE;
-			final Calendar c = Calendar.getInstance();
-			c.setTimeInMillis(m * MILLIS_A_MINUTE);
-			m = c.get(Calendar.MINUTE);
-			final int r = (int) (m % roundTo);
-			if (r != 0) {
-				if (r >= roundTo / 2) {
-					c.add(Calendar.MINUTE, -r + roundTo);
-				} else {
-					c.add(Calendar.MINUTE, -r);
-				}
-			}
-			return c.getTimeInMillis();
+			return TimeBuckets.getDefault().round(time,
+					Preferences.getRound(context));
 		}
 	}
 
@@ -496,9 +1165,15 @@ public final class DataProvider extends ContentProvider {
 		public static void onUpgrade(final SQLiteDatabase db,
 				final int oldVersion, final int newVersion) {
 			Log.w(TAG, "Upgrading table: " + TABLE);
-			final ContentValues[] values = backup(db, TABLE, PROJECTION, null);
-			onCreate(db);
-			reload(db, TABLE, values);
+			if (oldVersion < 2) {
+				final String backup = backupTable(db, TABLE);
+				onCreate(db);
+				restoreTable(db, backup, TABLE);
+			}
+			if (oldVersion < 6) {
+				// column added by Logs.onUpgrade()
+				Logs.syncTimeType(db);
+			}
 		}
 
 		/** Default constructor. */
@@ -608,9 +1283,11 @@ public final class DataProvider extends ContentProvider {
 		public static void onUpgrade(final SQLiteDatabase db,
 				final int oldVersion, final int newVersion) {
 			Log.w(TAG, "Upgrading table: " + TABLE);
-			final ContentValues[] values = backup(db, TABLE, PROJECTION, null);
-			onCreate(db);
-			reload(db, TABLE, values);
+			if (oldVersion < 2) {
+				final String backup = backupTable(db, TABLE);
+				onCreate(db);
+				restoreTable(db, backup, TABLE);
+			}
 		}
 
 		/** Default constructor. */
@@ -619,90 +1296,933 @@ public final class DataProvider extends ContentProvider {
 		}
 	}
 
-	/** {@link DatabaseHelper}. */
-	private DatabaseHelper mOpenHelper;
-
 	/**
-	 * Try to backup fields from table.
+	 * Daily summary of {@link Logs}. Holds one row per day with the sums of
+	 * all closed logs. It is kept up to date by all writes to {@link Logs}.
 	 * 
-	 * @param db
-	 *            {@link SQLiteDatabase}
-	 * @param table
-	 *            table
-	 * @param cols
-	 *            columns
-	 * @param strip
-	 *            column to forget on backup, eg. _id
-	 * @return array of rows
+	 * @author flx
 	 */
-	private static ContentValues[] backup(final SQLiteDatabase db,
-			final String table, final String[] cols, final String strip) {
-		ArrayList<ContentValues> ret = new ArrayList<ContentValues>();
-		String[] proj = cols;
-		if (strip != null) {
-			proj = new String[cols.length - 1];
-			int i = 0;
-			for (String c : cols) {
-				if (strip.equals(c) || c.startsWith(strip + " ")) {
-					continue;
-				}
-				proj[i] = c;
-				++i;
-			}
-		}
-		final int l = proj.length;
-		Cursor cursor = null;
-		try {
-			cursor = db.query(table, proj, null, null, null, null, null);
-		} catch (SQLException e) {
-			if (l == 1) {
-				return null;
-			}
-			final String err = e.getMessage();
-			if (!err.startsWith("no such column:")) {
-				return null;
-			}
-			final String str = err.split(":", 3)[1].trim();
-			return backup(db, table, proj, str);
-		}
-		if (cursor != null && cursor.moveToFirst()) {
-			do {
-				final ContentValues cv = new ContentValues();
-				for (int i = 0; i < l; i++) {
-					final String s = cursor.getString(i);
-					if (s != null) {
-						cv.put(proj[i], s);
-					}
-				}
-				ret.add(cv);
-			} while (cursor.moveToNext());
-		}
-		if (cursor != null && !cursor.isClosed()) {
-			cursor.close();
-		}
-		return ret.toArray(new ContentValues[0]);
-	}
+	public static final class DailySummary {
+		/** Table name. */
+		static final String TABLE = "daily_summary";
 
-	/**
-	 * Reload backup into table.
-	 * 
-	 * @param db
-	 *            {@link SQLiteDatabase}
-	 * @param table
-	 *            table
-	 * @param values
-	 *            {@link ContentValues}[] backed up with backup()
-	 */
-	private static void reload(final SQLiteDatabase db, final String table,
-			final ContentValues[] values) {
-		if (values == null || values.length == 0) {
-			return;
+		/** ID, same as {@link Logs#FROM_ED}. */
+		public static final String ID = "_id";
+
+		/**
+		 * Create table in {@link SQLiteDatabase}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		public static void onCreate(final SQLiteDatabase db) {
+			Log.i(TAG, "create table: " + TABLE);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+			db.execSQL("CREATE TABLE " + TABLE + " (" // .
+					+ ID + " INTEGER PRIMARY KEY, " // .
+					+ Logs.FROM + " LONG,"// .
+					+ Logs.FROM_Y + " INTEGER,"// .
+					+ Logs.FROM_M + " INTEGER,"// .
+					+ Logs.FROM_W + " INTEGER,"// .
+					+ Logs.FROM_D + " INTEGER,"// .
+					+ Logs.FROM_ED + " INTEGER,"// .
+					+ Logs.FROM_EW + " INTEGER,"// .
+					+ Logs.FROM_EM + " INTEGER,"// .
+					+ Logs.TO + " LONG,"// .
+					+ Logs.SUM_WORK + " LONG,"// .
+					+ Logs.SUM_TRAVEL + " LONG,"// .
+					+ Logs.SUM_PAUSE + " LONG"// .
+					+ ");");
+			createIndexes(db);
+		}
+
+		/**
+		 * Create indexes on {@link DailySummary}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		static void createIndexes(final SQLiteDatabase db) {
+			// default sort order
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_from_idx ON "
+					+ TABLE + " (" + Logs.FROM + ")");
+		}
+
+		/**
+		 * Upgrade table. A new summary is rebuild from {@link Logs}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 * @param oldVersion
+		 *            old version
+		 * @param newVersion
+		 *            new version
+		 */
+		public static void onUpgrade(final SQLiteDatabase db,
+				final int oldVersion, final int newVersion) {
+			Log.w(TAG, "Upgrading table: " + TABLE);
+			if (oldVersion < 5) {
+				onCreate(db);
+				rebuild(db, null);
+			}
+			createIndexes(db);
+		}
+
+		/** Default constructor. */
+		private DailySummary() {
+			// nothing here.
+		}
+
+		/**
+		 * Get where clause matching all {@link Logs} of a time type.
+		 * 
+		 * @param timeType
+		 *            time type
+		 * @return where clause
+		 */
+		private static String getWhereTimeType(final int timeType) {
+			return Logs.TABLE + "." + Logs.TYPE_TYPE + " = " + timeType;
+		}
+
+		/**
+		 * Get projection of the sum of a time type including the running
+		 * duration of open logs. The "?" is bound to the current time.
+		 * 
+		 * @param column
+		 *            column holding the sum of closed logs
+		 * @param timeType
+		 *            time type
+		 * @return projection
+		 */
+		static String getLiveSum(final String column, final int timeType) {
+			return "(" + column + " + COALESCE((select sum(? - "
+					+ Logs.TABLE + "." + Logs.FROM + ") from " + Logs.TABLE
+					+ " where " + Logs.TABLE + "." + Logs.FROM_ED + " = "
+					+ TABLE + "." + Logs.FROM_ED + " AND " + Logs.WHERE_OPEN
+					+ " AND " + getWhereTimeType(timeType) + "), 0)) AS "
+					+ column;
+		}
+
+		/**
+		 * Get projection of the sum of closed logs of a time type.
+		 * 
+		 * @param timeType
+		 *            time type
+		 * @return projection
+		 */
+		private static String getClosedSum(final int timeType) {
+			return "sum(CASE WHEN " + Logs.TO + " > 0 AND "
+					+ getWhereTimeType(timeType) + " THEN " + Logs.TO + " - "
+					+ Logs.FROM + " ELSE 0 END)";
+		}
+
+		/**
+		 * Update summary for the given days.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 * @param days
+		 *            days, see {@link Logs#FROM_ED}
+		 */
+		static void update(final SQLiteDatabase db, final Set<Long> days) {
+			if (days == null || days.isEmpty()) {
+				return;
+			}
+			rebuild(db, Logs.FROM_ED + " in (" + TextUtils.join(",", days)
+					+ ")");
+		}
+
+		/**
+		 * Rebuild summary from {@link Logs}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 * @param where
+		 *            where clause on {@link Logs#FROM_ED}, null for all days
+		 */
+		static void rebuild(final SQLiteDatabase db, final String where) {
+			Log.d(TAG, "rebuild summary: " + where);
+			db.delete(TABLE, where, null);
+			db.execSQL("INSERT INTO " + TABLE + " (" + ID + ", " + Logs.FROM
+					+ ", " + Logs.FROM_Y + ", " + Logs.FROM_M + ", "
+					+ Logs.FROM_W + ", " + Logs.FROM_D + ", " + Logs.FROM_ED
+					+ ", " + Logs.FROM_EW + ", " + Logs.FROM_EM + ", "
+					+ Logs.TO + ", " + Logs.SUM_WORK + ", " + Logs.SUM_TRAVEL
+					+ ", " + Logs.SUM_PAUSE + ") SELECT " + Logs.FROM_ED
+					+ ", min(" + Logs.FROM + "), " + Logs.FROM_Y + ", "
+					+ Logs.FROM_M + ", " + Logs.FROM_W + ", " + Logs.FROM_D
+					+ ", " + Logs.FROM_ED + ", " + Logs.FROM_EW + ", "
+					+ Logs.FROM_EM + ", max(" + Logs.TO + "), " + getClosedSum(Logtypes.TYPE_WORK)
+					+ ", " + getClosedSum(Logtypes.TYPE_TRAVEL) + ", "
+					+ getClosedSum(Logtypes.TYPE_PAUSE) + " FROM "
+					+ Logs.TABLE
+					+ (where == null ? "" : " WHERE " + where) + " GROUP BY "
+					+ Logs.FROM_ED);
+		}
+	}
+
+	/**
+	 * Current state: a single row holding a copy of the newest open
+	 * {@link Logs} and the number of open {@link Logs}. It is kept in sync in
+	 * the same transaction as every write to {@link Logs} and serves
+	 * {@link Logs#CONTENT_URI_OPEN} without scanning {@link Logs}. Opening and
+	 * closing a single log through {@link Statements} touches only this row,
+	 * other writes changing the open state read it from {@link Logs} again.
+	 * 
+	 * @author flx
+	 */
+	public static final class CurrentState {
+		/** Table name. */
+		static final String TABLE = "current_state";
+
+		/** Key of the single row, always 0. */
+		private static final String KEY = "_key";
+		/** ID, same as {@link Logs#ID}, NULL if no log is open. */
+		public static final String ID = "_id";
+		/** Number of open {@link Logs}. */
+		public static final String OPEN = "_open";
+
+		/** Columns copied from {@link Logs}. */
+		private static final String COLUMNS = ID + ", " + Logs.TYPE + ", "
+				+ Logs.TYPE_TYPE + ", " + Logs.FROM + ", " + Logs.FROM_ED
+				+ ", " + Logs.STARTBYAUTO;
+
+		/** Where clause matching the row, if a log is open. */
+		static final String WHERE_OPEN = ID + " NOT NULL";
+
+		/** Get number of open {@link Logs}. */
+		private static final String SQL_COUNT = "SELECT " + OPEN + " FROM "
+				+ TABLE;
+		/**
+		 * Copy a single log, if it is open. Bind {@link Logs#ID}. Call only
+		 * if no other log is open.
+		 */
+		private static final String SQL_OPEN = "INSERT OR REPLACE INTO "
+				+ TABLE + " (" + KEY + ", " + OPEN + ", " + COLUMNS
+				+ ") SELECT 0, 1, " + COLUMNS + " FROM " + Logs.TABLE
+				+ " WHERE " + Logs.ID + " = ? AND " + Logs.WHERE_OPEN;
+		/** Set no log open, as done by {@link Statements#closeOpen}. */
+		private static final String SQL_CLOSE = "INSERT OR REPLACE INTO "
+				+ TABLE + " (" + KEY + ", " + OPEN + ") VALUES (0, 0)";
+
+		/**
+		 * Create table in {@link SQLiteDatabase}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		public static void onCreate(final SQLiteDatabase db) {
+			Log.i(TAG, "create table: " + TABLE);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+			db.execSQL("CREATE TABLE " + TABLE + " (" // .
+					+ KEY + " INTEGER PRIMARY KEY CHECK (" + KEY + " = 0), "
+					+ OPEN + " INTEGER NOT NULL, " // .
+					+ ID + " INTEGER, " // .
+					+ Logs.TYPE + " INTEGER,"// .
+					+ Logs.TYPE_TYPE + " INTEGER,"// .
+					+ Logs.FROM + " LONG,"// .
+					+ Logs.FROM_ED + " INTEGER,"// .
+					+ Logs.STARTBYAUTO + " INTEGER"// .
+					+ ");");
+			db.execSQL(SQL_CLOSE);
+		}
+
+		/**
+		 * Upgrade table. The state is read from {@link Logs}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 * @param oldVersion
+		 *            old version
+		 * @param newVersion
+		 *            new version
+		 */
+		public static void onUpgrade(final SQLiteDatabase db,
+				final int oldVersion, final int newVersion) {
+			Log.w(TAG, "Upgrading table: " + TABLE);
+			if (oldVersion < 11) {
+				// one row for all open logs
+				onCreate(db);
+				update(db);
+			}
+		}
+
+		/** Default constructor. */
+		private CurrentState() {
+			// nothing here.
+		}
+
+		/**
+		 * Read the open {@link Logs}: count them and copy the newest one.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		static void update(final SQLiteDatabase db) {
+			db.execSQL("INSERT OR REPLACE INTO " + TABLE + " (" + KEY + ", "
+					+ OPEN + ") SELECT 0, count(*) FROM " + Logs.TABLE
+					+ " WHERE " + Logs.WHERE_OPEN);
+			db.execSQL("INSERT OR REPLACE INTO " + TABLE + " (" + KEY + ", "
+					+ OPEN + ", " + COLUMNS + ") SELECT 0, (" + SQL_COUNT
+					+ "), " + COLUMNS + " FROM " + Logs.TABLE + " WHERE "
+					+ Logs.WHERE_OPEN + " ORDER BY " + Logs.FROM + " DESC, "
+					+ Logs.ID + " DESC LIMIT 1");
+		}
+	}
+
+	/**
+	 * Cache of compiled {@link SQLiteStatement}s for the frequent writes done
+	 * on each location check: close open logs, open a new log and touch a
+	 * cell. Only values are bound into them. All methods must be called inside
+	 * a transaction while holding the object's lock.
+	 * 
+	 * @author flx
+	 */
+	private static final class Statements {
+		/** {@link SQLiteDatabase} the statements are compiled for. */
+		private final SQLiteDatabase db;
+		/** Get number of rows changed by last statement. */
+		private final SQLiteStatement changes;
+		/** Get number of open logs. */
+		private final SQLiteStatement openCount;
+		/** Get day of the single open log. */
+		private final SQLiteStatement openDay, openDayByAuto;
+		/** Get days of open logs. */
+		private final SQLiteStatement openDays, openDaysByAuto;
+		/** Get id of an open log of a given type. */
+		private final SQLiteStatement openOfType, openOfTypeState;
+		/** Close the single open log. */
+		private final SQLiteStatement closeOneStmt;
+		/** Close open logs. */
+		private final SQLiteStatement closeOpenStmt, closeOpenByAutoStmt;
+		/** Insert a log. */
+		private final SQLiteStatement insertLogStmt;
+		/** Keep {@link CurrentState} in sync. */
+		private final SQLiteStatement openStateStmt, closeStateStmt;
+		/** Touch a cell. */
+		private final SQLiteStatement touchCellStmt, touchCellFirstStmt;
+
+		/**
+		 * Compile all statements.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		Statements(final SQLiteDatabase db) {
+			this.db = db;
+			this.changes = db.compileStatement("SELECT changes()");
+			this.openCount = db.compileStatement(CurrentState.SQL_COUNT);
+			final String openDaySql = "SELECT ifnull(max(" + Logs.FROM_ED
+					+ "), -1) FROM " + CurrentState.TABLE + " WHERE "
+					+ CurrentState.OPEN + " = 1";
+			this.openDay = db.compileStatement(openDaySql);
+			this.openDayByAuto = db.compileStatement(openDaySql + " AND "
+					+ Logs.WHERE_BYAUTO);
+			final String openDaysSql = "SELECT group_concat(DISTINCT "
+					+ Logs.FROM_ED + ") FROM " + Logs.TABLE + " WHERE "
+					+ Logs.WHERE_OPEN;
+			this.openDays = db.compileStatement(openDaysSql);
+			this.openDaysByAuto = db.compileStatement(openDaysSql + " AND "
+					+ Logs.WHERE_BYAUTO);
+			this.openOfType = db.compileStatement("SELECT ifnull(max("
+					+ Logs.ID + "), -1) FROM " + Logs.TABLE + " WHERE "
+					+ Logs.WHERE_OPEN + " AND " + Logs.TYPE + " = ?");
+			this.openOfTypeState = db.compileStatement("SELECT ifnull(max("
+					+ CurrentState.ID + "), -1) FROM " + CurrentState.TABLE
+					+ " WHERE " + Logs.TYPE + " = ?");
+			this.closeOneStmt = db.compileStatement("UPDATE " + Logs.TABLE
+					+ " SET " + Logs.TO + " = ? WHERE " + Logs.ID
+					+ " = (SELECT " + CurrentState.ID + " FROM "
+					+ CurrentState.TABLE + ")");
+			final String closeSql = "UPDATE " + Logs.TABLE + " SET "
+					+ Logs.TO + " = ? WHERE " + Logs.WHERE_OPEN;
+			this.closeOpenStmt = db.compileStatement(closeSql);
+			this.closeOpenByAutoStmt = db.compileStatement(closeSql + " AND "
+					+ Logs.WHERE_BYAUTO);
+			final StringBuilder sb = new StringBuilder("INSERT INTO "
+					+ Logs.TABLE + " (");
+			sb.append(TextUtils.join(", ", Logs.INSERT_COLUMNS));
+			sb.append(", " + Logs.TYPE_TYPE + ") VALUES (?");
+			for (int i = 1; i < Logs.INSERT_COLUMNS.length; i++) {
+				sb.append(", ?");
+			}
+			sb.append(", (SELECT " + Logtypes.TIME_TYPE + " FROM "
+					+ Logtypes.TABLE + " WHERE " + Logtypes.ID + " = ?))");
+			this.insertLogStmt = db.compileStatement(sb.toString());
+			this.openStateStmt = db.compileStatement(CurrentState.SQL_OPEN);
+			this.closeStateStmt = db.compileStatement(CurrentState.SQL_CLOSE);
+			final String touchSql = "UPDATE " + Cells.TABLE + " SET "
+					+ Cells.SEEN_LAST + " = ?";
+			this.touchCellStmt = db.compileStatement(touchSql + " WHERE "
+					+ Cells.ID + " = ?");
+			this.touchCellFirstStmt = db.compileStatement(touchSql + ", "
+					+ Cells.SEEN_FIRST + " = ? WHERE " + Cells.ID + " = ?");
+		}
+
+		/**
+		 * Close all statements.
+		 */
+		void close() {
+			this.changes.close();
+			this.openCount.close();
+			this.openDay.close();
+			this.openDayByAuto.close();
+			this.openDays.close();
+			this.openDaysByAuto.close();
+			this.openOfType.close();
+			this.openOfTypeState.close();
+			this.closeOneStmt.close();
+			this.closeOpenStmt.close();
+			this.closeOpenByAutoStmt.close();
+			this.insertLogStmt.close();
+			this.openStateStmt.close();
+			this.closeStateStmt.close();
+			this.touchCellStmt.close();
+			this.touchCellFirstStmt.close();
+		}
+
+		/**
+		 * Close open logs.
+		 * 
+		 * @param to
+		 *            {@link Logs#TO}
+		 * @param byauto
+		 *            close only logs opened by automation
+		 * @param batch
+		 *            {@link WriteBatch} collecting the changed days
+		 * @return number of closed logs
+		 */
+		int closeOpen(final Object to, final boolean byauto,
+				final WriteBatch batch) {
+			final long open = this.openCount.simpleQueryForLong();
+			if (open == 0L) {
+				return 0;
+			} else if (open > 1L) {
+				return this.closeAll(to, byauto, batch);
+			}
+			// close the log by the id held in current state
+			final long day;
+			if (byauto) {
+				day = this.openDayByAuto.simpleQueryForLong();
+			} else {
+				day = this.openDay.simpleQueryForLong();
+			}
+			if (day < 0L) {
+				return 0;
+			}
+			DatabaseUtils.bindObjectToProgram(this.closeOneStmt, 1, to);
+			this.closeOneStmt.execute();
+			final int ret = (int) this.changes.simpleQueryForLong();
+			this.closeStateStmt.execute();
+			batch.days.add(day);
+			return ret;
+		}
+
+		/**
+		 * Close open logs, if more than one is open.
+		 * 
+		 * @param to
+		 *            {@link Logs#TO}
+		 * @param byauto
+		 *            close only logs opened by automation
+		 * @param batch
+		 *            {@link WriteBatch} collecting the changed days
+		 * @return number of closed logs
+		 */
+		private int closeAll(final Object to, final boolean byauto,
+				final WriteBatch batch) {
+			final String days;
+			final SQLiteStatement stmt;
+			if (byauto) {
+				days = this.openDaysByAuto.simpleQueryForString();
+				stmt = this.closeOpenByAutoStmt;
+			} else {
+				days = this.openDays.simpleQueryForString();
+				stmt = this.closeOpenStmt;
+			}
+			if (days == null) {
+				return 0;
+			}
+			DatabaseUtils.bindObjectToProgram(stmt, 1, to);
+			stmt.execute();
+			final int ret = (int) this.changes.simpleQueryForLong();
+			CurrentState.update(this.db);
+			for (String d : days.split(",")) {
+				batch.days.add(Long.parseLong(d));
+			}
+			return ret;
+		}
+
+		/**
+		 * Get an open log of a type.
+		 * 
+		 * @param type
+		 *            {@link Logs#TYPE}
+		 * @return {@link Logs#ID}, -1 if there is none
+		 */
+		long getOpenOfType(final int type) {
+			final SQLiteStatement stmt;
+			if (this.openCount.simpleQueryForLong() > 1L) {
+				stmt = this.openOfType;
+			} else {
+				stmt = this.openOfTypeState;
+			}
+			stmt.bindLong(1, type);
+			return stmt.simpleQueryForLong();
 		}
-		Log.d(TAG, "reload(db, " + table + ", cv[" + values.length + "])");
-		for (ContentValues cv : values) {
-			db.insert(table, null, cv);
+
+		/**
+		 * Check if {@link ContentValues} can be inserted with insertLog().
+		 * 
+		 * @param values
+		 *            {@link ContentValues}
+		 * @return true, if all values are known
+		 */
+		static boolean canInsertLog(final ContentValues values) {
+			int known = 0;
+			for (String c : Logs.INSERT_COLUMNS) {
+				if (values.containsKey(c)) {
+					++known;
+				}
+			}
+			return known == values.size();
+		}
+
+		/**
+		 * Insert a log. See canInsertLog().
+		 * 
+		 * @param values
+		 *            {@link ContentValues}
+		 * @return row id
+		 */
+		long insertLog(final ContentValues values) {
+			final int l = Logs.INSERT_COLUMNS.length;
+			for (int i = 0; i < l; i++) {
+				DatabaseUtils.bindObjectToProgram(this.insertLogStmt, i + 1,
+						values.get(Logs.INSERT_COLUMNS[i]));
+			}
+			// the log type's time type
+			DatabaseUtils.bindObjectToProgram(this.insertLogStmt, l + 1,
+					values.get(Logs.TYPE));
+			final long id = this.insertLogStmt.executeInsert();
+			if (id >= 0L) {
+				this.openState(id, values);
+			}
+			return id;
+		}
+
+		/**
+		 * Update {@link CurrentState} for an inserted log, if it is open.
+		 * 
+		 * @param id
+		 *            {@link Logs#ID}
+		 * @param values
+		 *            inserted {@link ContentValues}
+		 */
+		void openState(final long id, final ContentValues values) {
+			final Long to = values.getAsLong(Logs.TO);
+			if (to != null && to != 0L) {
+				return;
+			}
+			if (this.openCount.simpleQueryForLong() == 0L) {
+				this.openStateStmt.bindLong(1, id);
+				this.openStateStmt.execute();
+			} else {
+				CurrentState.update(this.db);
+			}
+		}
+
+		/**
+		 * Check if {@link ContentValues} can be set with touchCell().
+		 * 
+		 * @param values
+		 *            {@link ContentValues}
+		 * @return true, if values hold {@link Cells#SEEN_LAST} and optional
+		 *         {@link Cells#SEEN_FIRST}
+		 */
+		static boolean canTouchCell(final ContentValues values) {
+			final int l = values.size();
+			return values.containsKey(Cells.SEEN_LAST)
+					&& (l == 1 || l == 2
+							&& values.containsKey(Cells.SEEN_FIRST));
+		}
+
+		/**
+		 * Update a cell's seen timestamps. See canTouchCell().
+		 * 
+		 * @param id
+		 *            {@link Cells#ID}
+		 * @param values
+		 *            {@link ContentValues}
+		 * @return number of updated rows
+		 */
+		int touchCell(final long id, final ContentValues values) {
+			SQLiteStatement stmt;
+			if (values.containsKey(Cells.SEEN_FIRST)) {
+				stmt = this.touchCellFirstStmt;
+				DatabaseUtils.bindObjectToProgram(stmt, 2,
+						values.get(Cells.SEEN_FIRST));
+				stmt.bindLong(3, id);
+			} else {
+				stmt = this.touchCellStmt;
+				stmt.bindLong(2, id);
+			}
+			DatabaseUtils.bindObjectToProgram(stmt, 1,
+					values.get(Cells.SEEN_LAST));
+			stmt.execute();
+			return (int) this.changes.simpleQueryForLong();
 		}
-		return;
+	}
+
+	/**
+	 * Changes made by a batch of writes. The {@link DailySummary} is updated
+	 * and change notifications are sent once for the whole batch.
+	 * 
+	 * @author flx
+	 */
+	private static final class WriteBatch {
+		/** Changed {@link Uri}s, apart from {@link Logs}. */
+		private final HashSet<Uri> uris = new HashSet<Uri>();
+		/** Changed days, see {@link Logs#FROM_ED}. */
+		private final HashSet<Long> days = new HashSet<Long>();
+		/**
+		 * {@link Logtypes} changed: sync {@link Logs#TYPE_TYPE} and rebuild
+		 * the whole {@link DailySummary}.
+		 */
+		private boolean rebuildSummary = false;
+		/**
+		 * Open state of {@link Logs} changed by a write not going through
+		 * {@link Statements}: read the open {@link Logs} into
+		 * {@link CurrentState}.
+		 */
+		private boolean rebuildState = false;
+
+		/**
+		 * Update {@link DailySummary} for all changed days and, if needed, the
+		 * {@link CurrentState}.
+		 * 
+		 * @param db
+		 *            {@link SQLiteDatabase}
+		 */
+		void updateSummary(final SQLiteDatabase db) {
+			if (this.rebuildSummary) {
+				Logs.syncTimeType(db);
+				DailySummary.rebuild(db, null);
+			} else if (this.days.isEmpty()) {
+				return; // logs did not change
+			} else {
+				DailySummary.update(db, this.days);
+			}
+			if (this.rebuildSummary || this.rebuildState) {
+				CurrentState.update(db);
+			}
+		}
+
+		/**
+		 * Notify all changed {@link Uri}s. Changes of {@link Logs} are
+		 * notified on their days, observers of {@link Logs#CONTENT_URI} get
+		 * them as descendants.
+		 * 
+		 * @param cr
+		 *            {@link ContentResolver}
+		 */
+		void notifyChange(final ContentResolver cr) {
+			for (Uri uri : this.uris) {
+				cr.notifyChange(uri, null);
+			}
+			if (this.rebuildSummary) {
+				cr.notifyChange(Logs.CONTENT_URI, null);
+			} else if (this.days.isEmpty()) {
+				return;
+			} else {
+				for (Long day : this.days) {
+					cr.notifyChange(Logs.getDayUri(day), null);
+				}
+			}
+			cr.notifyChange(Logs.CONTENT_URI_SUM, null);
+			cr.notifyChange(Logs.CONTENT_URI_OPEN, null);
+		}
+	}
+
+	/** {@link DatabaseHelper}. */
+	private DatabaseHelper mOpenHelper;
+	/** {@link Statements}, compiled on first use. */
+	private Statements mStatements = null;
+	/** {@link WriteBatch} of the batch applied by the current thread. */
+	private final ThreadLocal<WriteBatch> mBatch = // .
+	new ThreadLocal<WriteBatch>();
+
+	/**
+	 * Move a table out of the way before it is recreated. Its indexes are
+	 * dropped, so they can be recreated with the new table.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param table
+	 *            table
+	 * @return name of the backup table
+	 */
+	private static String backupTable(final SQLiteDatabase db,
+			final String table) {
+		final String backup = table + "_backup";
+		Log.d(TAG, "backupTable(db, " + table + ")");
+		final Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master"
+				+ " WHERE type = 'index' AND tbl_name = ? AND sql NOT NULL",
+				new String[] { table });
+		if (cursor.moveToFirst()) {
+			do {
+				db.execSQL("DROP INDEX IF EXISTS " + cursor.getString(0));
+			} while (cursor.moveToNext());
+		}
+		cursor.close();
+		db.execSQL("DROP TABLE IF EXISTS " + backup);
+		db.execSQL("ALTER TABLE " + table + " RENAME TO " + backup);
+		return backup;
+	}
+
+	/**
+	 * Copy all rows from backup table into the recreated table and drop the
+	 * backup. Only columns existing in both tables are copied. Rows are
+	 * copied by SQLite without loading them into memory.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param backup
+	 *            backup table created by backupTable()
+	 * @param table
+	 *            recreated table
+	 */
+	private static void restoreTable(final SQLiteDatabase db,
+			final String backup, final String table) {
+		Log.d(TAG, "restoreTable(db, " + backup + ", " + table + ")");
+		final ArrayList<String> cols = getColumns(db, table);
+		cols.retainAll(getColumns(db, backup));
+		if (!cols.isEmpty()) {
+			final String c = TextUtils.join(", ", cols);
+			db.execSQL("INSERT INTO " + table + " (" + c + ") SELECT " + c
+					+ " FROM " + backup);
+		}
+		db.execSQL("DROP TABLE " + backup);
+	}
+
+	/**
+	 * Add a column to a table if it does not exist yet.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param table
+	 *            table
+	 * @param column
+	 *            column
+	 * @param type
+	 *            column's type
+	 */
+	private static void addColumn(final SQLiteDatabase db, final String table,
+			final String column, final String type) {
+		if (!getColumns(db, table).contains(column)) {
+			db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " "
+					+ type);
+		}
+	}
+
+	/**
+	 * Get columns of a table.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param table
+	 *            table
+	 * @return column names
+	 */
+	private static ArrayList<String> getColumns(final SQLiteDatabase db,
+			final String table) {
+		final ArrayList<String> ret = new ArrayList<String>();
+		final Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")",
+				null);
+		final int idName = cursor.getColumnIndex("name");
+		if (cursor.moveToFirst()) {
+			do {
+				ret.add(cursor.getString(idName));
+			} while (cursor.moveToNext());
+		}
+		cursor.close();
+		return ret;
+	}
+
+	/**
+	 * Close all open {@link Logs} and open a new one.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param values
+	 *            {@link ContentValues} holding {@link Logs#TYPE},
+	 *            {@link Logs#FROM} and {@link Logs#STARTBYAUTO}
+	 * @param batch
+	 *            {@link WriteBatch}
+	 * @return {@link Logs#ID} of the open log, -1 if no log is open
+	 */
+	private long switchOpen(final SQLiteDatabase db,
+			final ContentValues values, final WriteBatch batch) {
+		final Integer type = values.getAsInteger(Logs.TYPE);
+		if (type == null) {
+			throw new IllegalArgumentException("Type not set.");
+		}
+		final Statements st = this.getStatements(db);
+		synchronized (st) {
+			if (type > 0) {
+				final long id = st.getOpenOfType(type);
+				if (id >= 0L) {
+					Log.i(TAG, "skip open new log with same type");
+					return id;
+				}
+			}
+			Logs.fixValues(values);
+			st.closeOpen(values.get(Logs.FROM), false, batch);
+			if (type <= 0) {
+				return -1L;
+			}
+			final long id = st.insertLog(values);
+			if (id >= 0L) {
+				batch.days.add(values.getAsLong(Logs.FROM_ED));
+				batch.uris.add(ContentUris.withAppendedId(Logs.CONTENT_URI,
+						id));
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Get {@link Statements} compiled for the {@link SQLiteDatabase}.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @return {@link Statements}
+	 */
+	private synchronized Statements getStatements(final SQLiteDatabase db) {
+		if (this.mStatements == null || this.mStatements.db != db) {
+			if (this.mStatements != null) {
+				this.mStatements.close();
+			}
+			this.mStatements = new Statements(db);
+		}
+		return this.mStatements;
+	}
+
+	/**
+	 * Update {@link Logs}.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param values
+	 *            {@link ContentValues}
+	 * @param where
+	 *            where clause
+	 * @param args
+	 *            where arguments
+	 * @param batch
+	 *            {@link WriteBatch} collecting the changed days
+	 * @return number of updated rows
+	 */
+	private static int updateLogs(final SQLiteDatabase db,
+			final ContentValues values, final String where,
+			final String[] args, final WriteBatch batch) {
+		final HashSet<Long> days = new HashSet<Long>();
+		Logs.getDays(db, where, args, days);
+		if (values.containsKey(Logs.FROM)) {
+			Logs.fixValues(values);
+			days.add(values.getAsLong(Logs.FROM_ED));
+		}
+		Logs.fixTimeType(db, values);
+		if (values.size() == 0) {
+			return 0;
+		}
+		final int ret = db.update(Logs.TABLE, values, where, args);
+		if (ret > 0) {
+			batch.days.addAll(days);
+			batch.rebuildState |= values.containsKey(Logs.FROM)
+					|| values.containsKey(Logs.TO)
+					|| values.containsKey(Logs.TYPE)
+					|| values.containsKey(Logs.STARTBYAUTO);
+		}
+		return ret;
+	}
+
+	/**
+	 * Delete {@link Logs}.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param where
+	 *            where clause
+	 * @param args
+	 *            where arguments
+	 * @param batch
+	 *            {@link WriteBatch} collecting the changed days
+	 * @return number of deleted rows
+	 */
+	private static int deleteLogs(final SQLiteDatabase db, final String where,
+			final String[] args, final WriteBatch batch) {
+		final HashSet<Long> days = new HashSet<Long>();
+		Logs.getDays(db, where, args, days);
+		final int ret = db.delete(Logs.TABLE, where, args);
+		if (ret > 0) {
+			batch.days.addAll(days);
+			// deleted logs may have been open
+			batch.rebuildState |= DatabaseUtils.longForQuery(db,
+					CurrentState.SQL_COUNT, null) > 0L;
+		}
+		return ret;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ContentProviderResult[] applyBatch(
+			final ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		Log.d(TAG, "applyBatch(ops[" + operations.size() + "])");
+		final SQLiteDatabase db = this.mOpenHelper.getWritableDatabase();
+		final WriteBatch batch = new WriteBatch();
+		ContentProviderResult[] ret;
+		db.beginTransaction();
+		this.mBatch.set(batch);
+		try {
+			ret = super.applyBatch(operations);
+			batch.updateSummary(db);
+			db.setTransactionSuccessful();
+		} finally {
+			this.mBatch.set(null);
+			db.endTransaction();
+		}
+		batch.notifyChange(this.getContext().getContentResolver());
+		return ret;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int bulkInsert(final Uri uri, final ContentValues[] values) {
+		Log.d(TAG, "bulkInsert(" + uri + ", cv[" + values.length + "])");
+		final SQLiteDatabase db = this.mOpenHelper.getWritableDatabase();
+		final WriteBatch batch = new WriteBatch();
+		int ret = 0;
+		db.beginTransaction();
+		try {
+			for (ContentValues cv : values) {
+				if (this.insert(db, uri, cv, batch) != null) {
+					++ret;
+				}
+			}
+			batch.updateSummary(db);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		batch.notifyChange(this.getContext().getContentResolver());
+		Log.d(TAG, "inserted: " + ret);
+		return ret;
 	}
 
 	/**
@@ -713,25 +2233,68 @@ public final class DataProvider extends ContentProvider {
 			final String[] selectionArgs) {
 		Log.d(TAG, "delete(" + uri + "," + selection + ")");
 		final SQLiteDatabase db = this.mOpenHelper.getWritableDatabase();
+		final WriteBatch batch = this.mBatch.get();
+		if (batch != null) {
+			return delete(db, uri, selection, selectionArgs, batch);
+		}
+		final WriteBatch single = new WriteBatch();
+		int ret;
+		db.beginTransaction();
+		try {
+			ret = delete(db, uri, selection, selectionArgs, single);
+			single.updateSummary(db);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		single.notifyChange(this.getContext().getContentResolver());
+		return ret;
+	}
+
+	/**
+	 * Delete rows inside a running transaction.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param uri
+	 *            {@link Uri}
+	 * @param selection
+	 *            selection
+	 * @param selectionArgs
+	 *            selection arguments
+	 * @param batch
+	 *            {@link WriteBatch}
+	 * @return number of deleted rows
+	 */
+	private static int delete(final SQLiteDatabase db, final Uri uri,
+			final String selection, final String[] selectionArgs,
+			final WriteBatch batch) {
 		int ret = 0;
+		boolean notify = true;
 		switch (URI_MATCHER.match(uri)) {
 		case ID_LOGS:
-			ret = db.delete(Logs.TABLE, selection, selectionArgs);
+			ret = deleteLogs(db, selection, selectionArgs, batch);
+			// notified by day, not per log, see Logs.CONTENT_URI
+			notify = false;
 			break;
 		case ID_LOGID:
-			ret = db.delete(Logs.TABLE, DbUtils.sqlAnd(Logs.ID + "="
-					+ ContentUris.parseId(uri), selection), selectionArgs);
+			ret = deleteLogs(db, DbUtils.sqlAnd(Logs.ID + "="
+					+ ContentUris.parseId(uri), selection), selectionArgs,
+					batch);
 			break;
 		case ID_OPENLOG:
-			ret = db.delete(Logs.TABLE,
-					DbUtils.sqlAnd(Logs.WHERE_OPEN, selection), selectionArgs);
+			ret = deleteLogs(db, DbUtils.sqlAnd(Logs.WHERE_OPEN, selection),
+					selectionArgs, batch);
+			notify = false; // notified by day
 			break;
 		case ID_LOGTYPES:
 			ret = db.delete(Logtypes.TABLE, selection, selectionArgs);
+			batch.rebuildSummary |= ret > 0;
 			break;
 		case ID_LOGTYPEID:
 			ret = db.delete(Logtypes.TABLE, DbUtils.sqlAnd(Logtypes.ID + "="
 					+ ContentUris.parseId(uri), selection), selectionArgs);
+			batch.rebuildSummary |= ret > 0;
 			break;
 		case ID_CELLS:
 			ret = db.delete(Cells.TABLE, selection, selectionArgs);
@@ -743,8 +2306,8 @@ public final class DataProvider extends ContentProvider {
 		default:
 			throw new IllegalArgumentException("Unknown Uri " + uri);
 		}
-		if (ret > 0) {
-			this.getContext().getContentResolver().notifyChange(uri, null);
+		if (ret > 0 && notify) {
+			batch.uris.add(uri);
 		}
 		Log.d(TAG, "deleted: " + ret);
 		return ret;
@@ -757,9 +2320,15 @@ public final class DataProvider extends ContentProvider {
 	public String getType(final Uri uri) {
 		switch (URI_MATCHER.match(uri)) {
 		case ID_LOGS:
+		case ID_LOGDAY:
 			return Logs.CONTENT_TYPE;
 		case ID_LOGID:
+		case ID_OPENLOG:
+		case ID_SWITCHLOG:
+			// a single log: the open one or the one opened
 			return Logs.CONTENT_ITEM_TYPE;
+		case ID_LOGSUM:
+			return Logs.CONTENT_TYPE_SUM;
 		case ID_LOGTYPES:
 			return Logtypes.CONTENT_TYPE;
 		case ID_LOGTYPEID:
@@ -780,15 +2349,70 @@ public final class DataProvider extends ContentProvider {
 	public Uri insert(final Uri uri, final ContentValues values) {
 		Log.d(TAG, "insert(" + uri + "," + values + ")");
 		final SQLiteDatabase db = this.mOpenHelper.getWritableDatabase();
+		final WriteBatch batch = this.mBatch.get();
+		if (batch != null) {
+			return this.insert(db, uri, values, batch);
+		}
+		final WriteBatch single = new WriteBatch();
+		Uri ret;
+		db.beginTransaction();
+		try {
+			ret = this.insert(db, uri, values, single);
+			single.updateSummary(db);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		single.notifyChange(this.getContext().getContentResolver());
+		return ret;
+	}
+
+	/**
+	 * Insert a row inside a running transaction.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param uri
+	 *            {@link Uri}
+	 * @param values
+	 *            {@link ContentValues}
+	 * @param batch
+	 *            {@link WriteBatch}
+	 * @return {@link Uri} of the new row
+	 */
+	private Uri insert(final SQLiteDatabase db, final Uri uri,
+			final ContentValues values, final WriteBatch batch) {
 		long ret = -1;
+		Uri base = uri;
 		switch (URI_MATCHER.match(uri)) {
+		case ID_SWITCHLOG:
+			base = Logs.CONTENT_URI;
+			ret = this.switchOpen(db, values, batch);
+			break;
 		case ID_LOGS:
 			if (!values.containsKey(Logs.TYPE)) {
 				throw new IllegalArgumentException("Type not set.");
 			}
 			Logs.fixValues(values);
 			Log.d(TAG, "insert: " + values);
-			ret = db.insert(Logs.TABLE, null, values);
+			if (Statements.canInsertLog(values)) {
+				final Statements st = this.getStatements(db);
+				synchronized (st) {
+					ret = st.insertLog(values);
+				}
+			} else {
+				Logs.fixTimeType(db, values);
+				ret = db.insert(Logs.TABLE, null, values);
+				if (ret >= 0) {
+					final Statements st = this.getStatements(db);
+					synchronized (st) {
+						st.openState(ret, values);
+					}
+				}
+			}
+			if (ret >= 0) {
+				batch.days.add(values.getAsLong(Logs.FROM_ED));
+			}
 			break;
 		case ID_LOGTYPES:
 			ret = db.insert(Logtypes.TABLE, null, values);
@@ -801,8 +2425,10 @@ public final class DataProvider extends ContentProvider {
 		}
 		Uri ruri = null;
 		if (ret >= 0) {
-			this.getContext().getContentResolver().notifyChange(uri, null);
-			ruri = ContentUris.withAppendedId(uri, ret);
+			ruri = ContentUris.withAppendedId(base, ret);
+			if (base == uri) {
+				batch.uris.add(ruri);
+			}
 		}
 		Log.d(TAG, "inserted: " + ruri);
 		return ruri;
@@ -813,44 +2439,164 @@ public final class DataProvider extends ContentProvider {
 	 */
 	@Override
 	public boolean onCreate() {
-		final Context context = this.getContext();
-		this.mOpenHelper = new DatabaseHelper(context);
-		SQLiteDatabase db = this.mOpenHelper.getWritableDatabase();
-		if (db.query(Logtypes.TABLE, Logtypes.PROJECTION, null, null, null,
-				null, null).getCount() == 0) {
-			Log.i(TAG, "insert default types");
-			ContentValues values = new ContentValues();
-			values.put(Logtypes.NAME, context.getString(R.string.pause));
-			values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_PAUSE);
-			values.put(Logtypes.ID, Logtypes.TYPE_PAUSE);
-			db.insert(Logtypes.TABLE, null, values);
-			values = new ContentValues();
-			values.put(Logtypes.NAME, context.getString(R.string.travel));
-			values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_TRAVEL);
-			values.put(Logtypes.ID, Logtypes.TYPE_TRAVEL);
-			db.insert(Logtypes.TABLE, null, values);
-			values = new ContentValues();
-			values.put(Logtypes.NAME, context.getString(R.string.work));
-			values.put(Logtypes.TIME_TYPE, Logtypes.TYPE_WORK);
-			values.put(Logtypes.ID, Logtypes.TYPE_WORK);
-			db.insert(Logtypes.TABLE, null, values);
-		}
-		final SharedPreferences p = PreferenceManager
-				.getDefaultSharedPreferences(context);
-		final int l = p.getInt(PREFS_LISTCOUNT, 0);
-		for (int i = 0; i < l; i++) {
-			Log.i(TAG, "migrate old data: " + i);
-			final ContentValues values = new ContentValues();
-			values.put(Logs.FROM, p.getLong(PREFS_LIST_START + i, 0));
-			values.put(Logs.TO, p.getLong(PREFS_LIST_STOP + i, 0));
-			values.put(Logs.TYPE, p.getInt(PREFS_LIST_TYPE + i, 0));
-			Logs.fixValues(values);
-			db.insert(Logs.TABLE, null, values);
-		}
-		p.edit().remove(PREFS_LISTCOUNT).commit();
+		// the database is opened on first access
+		this.mOpenHelper = new DatabaseHelper(this.getContext());
+		final IntentFilter filter = new IntentFilter(
+				Intent.ACTION_TIMEZONE_CHANGED);
+		filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+		this.getContext().registerReceiver(new BroadcastReceiver() {
+			@Override
+			public void onReceive(final Context context, final Intent intent) {
+				Log.d(TAG, "reset time buckets: " + intent.getAction());
+				TimeBuckets.reset();
+			}
+		}, filter);
 		return true;
 	}
 
+	/**
+	 * Get the {@link SQLiteDatabase}, opening it if needed. Used by tests
+	 * checking the schema and the summary tables.
+	 * 
+	 * @return writable {@link SQLiteDatabase}
+	 */
+	SQLiteDatabase getDatabase() {
+		return this.mOpenHelper.getWritableDatabase();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Bundle call(final String method, final String arg,
+			final Bundle extras) {
+		Log.d(TAG, "call(" + method + ")");
+		final SQLiteDatabase db = this.mOpenHelper.getReadableDatabase();
+		if (Logs.METHOD_SUMS.equals(method)) {
+			if (extras == null || !extras.containsKey(Logs.EXTRA_FIRST_DAY)
+					|| !extras.containsKey(Logs.EXTRA_LAST_DAY)) {
+				throw new IllegalArgumentException(method + " needs "
+						+ Logs.EXTRA_FIRST_DAY + " and " + Logs.EXTRA_LAST_DAY);
+			}
+			return getSums(db, extras.getLong(Logs.EXTRA_FIRST_DAY),
+					extras.getLong(Logs.EXTRA_LAST_DAY));
+		} else if (Logs.METHOD_OPEN.equals(method)) {
+			final Cursor cursor;
+			if (extras == null || !extras.containsKey(Logs.EXTRA_TIME_TYPES)) {
+				cursor = db.query(CurrentState.TABLE, Logs.PROJECTION_OPEN,
+						CurrentState.WHERE_OPEN, null, null, null, null);
+			} else {
+				final int[] timeTypes = extras
+						.getIntArray(Logs.EXTRA_TIME_TYPES);
+				if (timeTypes == null || !extras.containsKey(Logs.EXTRA_DAY)) {
+					throw new IllegalArgumentException(method + " needs "
+							+ Logs.EXTRA_DAY + " and " + Logs.EXTRA_TIME_TYPES);
+				}
+				// any open log counts, not only the newest
+				cursor = db.query(Logs.TABLE, Logs.PROJECTION_OPEN, Logs
+						.getWhereOpen(extras.getLong(Logs.EXTRA_DAY),
+								timeTypes), null, null, null, Logs.FROM
+						+ " DESC", "1");
+			}
+			final Bundle ret = Logs.getOpen(cursor);
+			cursor.close();
+			return ret;
+		}
+		throw new IllegalArgumentException("Unknown method " + method);
+	}
+
+	/**
+	 * Get the sums of a range of days.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param firstDay
+	 *            first day, see {@link Logs#FROM_ED}
+	 * @param lastDay
+	 *            last day, see {@link Logs#FROM_ED}
+	 * @return {@link Bundle} holding {@link Logs#SUM_WORK},
+	 *         {@link Logs#SUM_TRAVEL} and {@link Logs#SUM_PAUSE}
+	 */
+	private static Bundle getSums(final SQLiteDatabase db,
+			final long firstDay, final long lastDay) {
+		final String[] args = new String[] { String.valueOf(firstDay),
+				String.valueOf(lastDay) };
+		long work = 0L;
+		long travel = 0L;
+		long pause = 0L;
+		// closed logs
+		Cursor cursor = db.rawQuery("SELECT sum(" + Logs.SUM_WORK + "), sum("
+				+ Logs.SUM_TRAVEL + "), sum(" + Logs.SUM_PAUSE + ") FROM "
+				+ DailySummary.TABLE + " WHERE " + DailySummary.ID
+				+ " BETWEEN ? AND ?", args);
+		if (cursor.moveToFirst()) {
+			work = cursor.getLong(0);
+			travel = cursor.getLong(1);
+			pause = cursor.getLong(2);
+		}
+		cursor.close();
+		// running open logs
+		final long now = System.currentTimeMillis();
+		cursor = db.rawQuery("SELECT " + Logs.TYPE_TYPE + ", " + Logs.FROM
+				+ " FROM " + Logs.TABLE + " WHERE " + Logs.WHERE_OPEN + " AND "
+				+ Logs.FROM_ED + " BETWEEN ? AND ?", args);
+		while (cursor.moveToNext()) {
+			final long d = now - cursor.getLong(1);
+			switch (cursor.getInt(0)) {
+			case Logtypes.TYPE_WORK:
+				work += d;
+				break;
+			case Logtypes.TYPE_TRAVEL:
+				travel += d;
+				break;
+			case Logtypes.TYPE_PAUSE:
+				pause += d;
+				break;
+			default:
+				break;
+			}
+		}
+		cursor.close();
+		final Bundle ret = new Bundle();
+		ret.putLong(Logs.SUM_WORK, work);
+		ret.putLong(Logs.SUM_TRAVEL, travel);
+		ret.putLong(Logs.SUM_PAUSE, pause);
+		return ret;
+	}
+
+	/**
+	 * Bind the current time to each "?" in the projection.
+	 * 
+	 * @param projection
+	 *            projection
+	 * @param selectionArgs
+	 *            selection arguments
+	 * @return arguments for projection and selection
+	 */
+	private static String[] bindNow(final String[] projection,
+			final String[] selectionArgs) {
+		int n = 0;
+		if (projection != null) {
+			for (String p : projection) {
+				int i = p.indexOf('?');
+				while (i >= 0) {
+					++n;
+					i = p.indexOf('?', i + 1);
+				}
+			}
+		}
+		if (n == 0) {
+			return selectionArgs;
+		}
+		final int l = selectionArgs == null ? 0 : selectionArgs.length;
+		final String[] ret = new String[n + l];
+		Arrays.fill(ret, 0, n, String.valueOf(System.currentTimeMillis()));
+		if (l > 0) {
+			System.arraycopy(selectionArgs, 0, ret, n, l);
+		}
+		return ret;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -864,41 +2610,65 @@ public final class DataProvider extends ContentProvider {
 		final int uid = URI_MATCHER.match(uri);
 		String groupBy = null;
 		String orderBy = null;
+		String limit = null;
 		Cursor c = null;
 		switch (uid) {
 		case ID_LOGID:
 			c = db.query(
-					Logs.JOIN_LOGTYPES,
+					Logs.getTables(projection, selection, orderBy),
 					projection,
 					DbUtils.sqlAnd(selection, Logs.TABLE + "." + Logs.ID
 							+ " = " + ContentUris.parseId(uri)), selectionArgs,
 					groupBy, null, orderBy);
 			break;
 		case ID_LOGS:
+			limit = Logs.getLimit(uri);
+			if (limit == null) {
+				orderBy = Logs.FROM + " DESC";
+			} else {
+				// the id makes the order unique for keyset paging
+				orderBy = Logs.FROM_ED + " DESC, " + Logs.FROM + " DESC, "
+						+ Logs.TABLE + "." + Logs.ID + " DESC";
+			}
+			if (!TextUtils.isEmpty(sortOrder)) {
+				orderBy = sortOrder;
+			}
+			c = db.query(Logs.getTables(projection, selection, orderBy),
+					projection, DbUtils.sqlAnd(selection, Logs.getWherePage(
+							uri, Logs.FROM_ED, Logs.FROM, Logs.TABLE + "."
+									+ Logs.ID)), selectionArgs,
+					groupBy, null, orderBy, limit);
+			break;
+		case ID_LOGDAY:
 			orderBy = Logs.FROM + " DESC";
 			if (!TextUtils.isEmpty(sortOrder)) {
 				orderBy = sortOrder;
 			}
-			c = db.query(Logs.JOIN_LOGTYPES, projection, selection,
-					selectionArgs, groupBy, null, orderBy);
+			c = db.query(Logs.getTables(projection, selection, orderBy),
+					projection, DbUtils.sqlAnd(selection, Logs.FROM_ED + " = "
+							+ ContentUris.parseId(uri)), selectionArgs,
+					groupBy, null, orderBy);
 			break;
 		case ID_OPENLOG:
 			orderBy = Logs.FROM + " DESC";
 			if (!TextUtils.isEmpty(sortOrder)) {
 				orderBy = sortOrder;
 			}
-			c = db.query(Logs.JOIN_LOGTYPES, projection,
-					DbUtils.sqlAnd(selection, Logs.WHERE_OPEN), selectionArgs,
+			// newest open log, read from the single row of current state
+			c = db.query(CurrentState.TABLE, projection, DbUtils.sqlAnd(
+					selection, CurrentState.WHERE_OPEN), selectionArgs,
 					groupBy, null, orderBy);
 			break;
 		case ID_LOGSUM:
-			groupBy = Logs.FROM_D;
-			orderBy = Logs.FROM + " DESC";
+			orderBy = DailySummary.ID + " DESC";
 			if (!TextUtils.isEmpty(sortOrder)) {
 				orderBy = sortOrder;
 			}
-			c = db.query(Logs.TABLE, projection, selection, selectionArgs,
-					groupBy, null, orderBy);
+			c = db.query(DailySummary.TABLE, projection, DbUtils.sqlAnd(
+					selection,
+					Logs.getWherePage(uri, DailySummary.ID, null, null)),
+					bindNow(projection, selectionArgs), groupBy, null,
+					orderBy, Logs.getLimit(uri));
 			break;
 		case ID_LOGTYPEID:
 			qb.appendWhere(Logtypes.ID + "=" + ContentUris.parseId(uri));
@@ -948,47 +2718,111 @@ public final class DataProvider extends ContentProvider {
 			final String selection, final String[] selectionArgs) {
 		Log.d(TAG, "update(" + uri + "," + selection + "," + values + ")");
 		final SQLiteDatabase db = this.mOpenHelper.getWritableDatabase();
+		final WriteBatch batch = this.mBatch.get();
+		if (batch != null) {
+			return this.update(db, uri, values, selection, selectionArgs,
+					batch);
+		}
+		final WriteBatch single = new WriteBatch();
+		int ret;
+		db.beginTransaction();
+		try {
+			ret = this.update(db, uri, values, selection, selectionArgs,
+					single);
+			single.updateSummary(db);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		single.notifyChange(this.getContext().getContentResolver());
+		return ret;
+	}
+
+	/**
+	 * Update rows inside a running transaction.
+	 * 
+	 * @param db
+	 *            {@link SQLiteDatabase}
+	 * @param uri
+	 *            {@link Uri}
+	 * @param values
+	 *            {@link ContentValues}
+	 * @param selection
+	 *            selection
+	 * @param selectionArgs
+	 *            selection arguments
+	 * @param batch
+	 *            {@link WriteBatch}
+	 * @return number of updated rows
+	 */
+	private int update(final SQLiteDatabase db, final Uri uri,
+			final ContentValues values, final String selection,
+			final String[] selectionArgs, final WriteBatch batch) {
 		int ret = 0;
+		boolean notify = true;
 		switch (URI_MATCHER.match(uri)) {
 		case ID_LOGS:
-			if (values.containsKey(Logs.FROM)) {
-				Logs.fixValues(values);
-			}
-			ret = db.update(Logs.TABLE, values, selection, selectionArgs);
+			ret = updateLogs(db, values, selection, selectionArgs, batch);
+			// notified by day, not per log, see Logs.CONTENT_URI
+			notify = false;
 			break;
 		case ID_LOGID:
-			if (values.containsKey(Logs.FROM)) {
-				Logs.fixValues(values);
-			}
-			ret = db.update(Logs.TABLE, values, DbUtils.sqlAnd(Logs.ID + "="
-					+ ContentUris.parseId(uri), selection), selectionArgs);
+			ret = updateLogs(db, values, DbUtils.sqlAnd(Logs.ID + "="
+					+ ContentUris.parseId(uri), selection), selectionArgs,
+					batch);
 			break;
 		case ID_OPENLOG:
-			if (values.containsKey(Logs.FROM)) {
-				Logs.fixValues(values);
+			if (values.size() == 1 && values.containsKey(Logs.TO)
+					&& selectionArgs == null
+					&& (selection == null || // .
+					Logs.WHERE_BYAUTO.equals(selection))) {
+				// close open logs
+				final Statements st = this.getStatements(db);
+				synchronized (st) {
+					ret = st.closeOpen(values.get(Logs.TO), selection != null,
+							batch);
+				}
+			} else {
+				ret = updateLogs(db, values,
+						DbUtils.sqlAnd(Logs.WHERE_OPEN, selection),
+						selectionArgs, batch);
 			}
-			ret = db.update(Logs.TABLE, values,
-					DbUtils.sqlAnd(Logs.WHERE_OPEN, selection), selectionArgs);
+			notify = false; // notified by day
 			break;
 		case ID_LOGTYPES:
 			ret = db.update(Logtypes.TABLE, values, selection, selectionArgs);
+			batch.rebuildSummary |= ret > 0
+					&& values.containsKey(Logtypes.TIME_TYPE);
 			break;
 		case ID_LOGTYPEID:
 			ret = db.update(Logtypes.TABLE, values, DbUtils.sqlAnd(Logtypes.ID
 					+ "=" + ContentUris.parseId(uri), selection), selectionArgs);
+			batch.rebuildSummary |= ret > 0
+					&& values.containsKey(Logtypes.TIME_TYPE);
 			break;
 		case ID_CELLS:
 			ret = db.update(Cells.TABLE, values, selection, selectionArgs);
+			// seen timestamps are bookkeeping, nobody shows them
+			notify = !Statements.canTouchCell(values);
 			break;
 		case ID_CELLID:
-			ret = db.update(Cells.TABLE, values, DbUtils.sqlAnd(Cells.ID + "="
-					+ ContentUris.parseId(uri), selection), selectionArgs);
+			notify = !Statements.canTouchCell(values);
+			if (selection == null && !notify) {
+				final Statements st = this.getStatements(db);
+				synchronized (st) {
+					ret = st.touchCell(ContentUris.parseId(uri), values);
+				}
+			} else {
+				ret = db.update(Cells.TABLE, values, DbUtils.sqlAnd(Cells.ID
+						+ "=" + ContentUris.parseId(uri), selection),
+						selectionArgs);
+			}
 			break;
 		default:
 			throw new IllegalArgumentException("Unknown Uri " + uri);
 		}
-		if (ret > 0) {
-			this.getContext().getContentResolver().notifyChange(uri, null);
+		if (ret > 0 && notify) {
+			batch.uris.add(uri);
 		}
 		Log.d(TAG, "updated: " + ret);
 		return ret;
@@ -23,28 +23,35 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
-import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.location.Location;
 import android.location.LocationManager;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.PowerManager;
 import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
 
-import java.util.Calendar;
+import java.io.File;
+import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.ub0r.android.lib.Log;
 import de.ub0r.android.lib.Utils;
 import de.ub0r.android.travelLog.R;
+import de.ub0r.android.travelLog.core.CellTracker;
+import de.ub0r.android.travelLog.core.Geofence;
+import de.ub0r.android.travelLog.core.HotState;
+import de.ub0r.android.travelLog.core.WarnLevels;
 import de.ub0r.android.travelLog.ui.Logs;
 import de.ub0r.android.travelLog.ui.Preferences;
 
@@ -106,19 +113,39 @@ public final class LocationChecker extends BroadcastReceiver {
     private static final String PREFS_LAST_LEVEL = "last_level";
 
     /**
-     * Normal.
+     * Time after receiving a broadcast its check must be done by: below the
+     * 10s a receiver may take, even for foreground broadcasts. Checks waiting
+     * longer behind another one are skipped, a check running late skips the
+     * warning.
      */
-    private static final int LEVEL_NOTHING = 0;
+    private static final long CHECK_DEADLINE = 8000L;
 
     /**
-     * Warning.
+     * Maximal time to hold the wakelock, longer than a check may take. A
+     * single database open or write may still run over the deadline.
      */
-    private static final int LEVEL_WARN = 1;
+    private static final long WAKELOCK_TIMEOUT = 60000L;
 
     /**
-     * Alert.
+     * Runs checks off the main thread, one at a time.
      */
-    private static final int LEVEL_ALERT = 2;
+    private static final ExecutorService EXECUTOR = Executors
+            .newSingleThreadExecutor();
+
+    /**
+     * 100%.
+     */
+    private static final int PERCENT = 100;
+
+    /**
+     * File name of {@link HotState}.
+     */
+    private static final String HOT_STATE = "hot_state";
+
+    /**
+     * State kept between checks.
+     */
+    private static HotState hotState = null;
 
     private boolean isAction(final String action, final String... actions) {
         if (action == null || actions == null || actions.length == 0) {
@@ -136,12 +163,13 @@ public final class LocationChecker extends BroadcastReceiver {
     public void onReceive(final Context context, final Intent intent) {
         Log.i(TAG, "onReceive(" + intent + ")");
 
-        // get wakelock
+        // get wakelock, released after the check or on timeout
         final PowerManager pm = (PowerManager) context
                 .getSystemService(Context.POWER_SERVICE);
         final PowerManager.WakeLock wakelock = pm.newWakeLock(
                 PowerManager.PARTIAL_WAKE_LOCK, TAG);
-        wakelock.acquire();
+        final long start = SystemClock.elapsedRealtime();
+        wakelock.acquire(WAKELOCK_TIMEOUT);
         Log.i(TAG, "got wakelock");
 
         final String a = intent.getAction();
@@ -149,27 +177,128 @@ public final class LocationChecker extends BroadcastReceiver {
         if (isAction(a, Intent.ACTION_BOOT_COMPLETED, Intent.ACTION_DATE_CHANGED,
                 Intent.ACTION_MY_PACKAGE_REPLACED)) {
             Preferences.registerLocationChecker(context);
+            release(wakelock, start);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // hand off to background thread, keep broadcast alive until done
+            final PendingResult result = this.goAsync();
+            final Context appContext = context.getApplicationContext();
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        check(appContext, start);
+                    } finally {
+                        try {
+                            release(wakelock, start);
+                        } finally {
+                            result.finish();
+                        }
+                    }
+                }
+            });
+        } else {
+            try {
+                check(context, start);
+            } finally {
+                release(wakelock, start);
+            }
+        }
+    }
+
+    /**
+     * Do the actual work: check location, warnings and schedule next run.
+     *
+     * @param context {@link Context}
+     * @param start   time the broadcast was received, see
+     *                {@link SystemClock#elapsedRealtime()}
+     */
+    private static void check(final Context context, final long start) {
+        final long begin = SystemClock.elapsedRealtime();
+        if (begin - start > CHECK_DEADLINE) {
+            // the check we waited for has just seen the same state
+            Log.w(TAG, "skip check, waited " + (begin - start) + "ms");
+            return;
+        }
+        final HotState state = getHotState(context);
+        checkLocation(context, state);
+        if (SystemClock.elapsedRealtime() - start > CHECK_DEADLINE) {
+            // next check warns
+            Log.w(TAG, "skip warning, deadline passed");
         } else {
-            // do actual work
-            checkLocation(context);
-            long delay = checkWarning(context);
+            long delay = checkWarning(context, state);
             if (delay > 0L) {
                 // schedule next run
                 schedNext(context, delay);
             }
         }
+        try {
+            state.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "error writing state", e);
+        }
+        final long end = SystemClock.elapsedRealtime();
+        Log.i(TAG, "check took " + (end - begin) + "ms, waited "
+                + (begin - start) + "ms");
+    }
 
-        // release wakelock
+    /**
+     * Release wakelock.
+     *
+     * @param wakelock {@link PowerManager.WakeLock}
+     * @param start    time the wakelock was acquired, see
+     *                 {@link SystemClock#elapsedRealtime()}
+     */
+    private static void release(final PowerManager.WakeLock wakelock,
+            final long start) {
+        if (!wakelock.isHeld()) {
+            Log.w(TAG, "wakelock timed out after "
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+            return;
+        }
         wakelock.release();
-        Log.i(TAG, "wakelock released");
+        Log.i(TAG, "wakelock released, held "
+                + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /**
+     * Get {@link HotState}, load it if needed. Values stored in
+     * {@link SharedPreferences} by older versions are moved into it.
+     *
+     * @param context {@link Context}
+     * @return {@link HotState}
+     */
+    private static synchronized HotState getHotState(final Context context) {
+        if (hotState == null) {
+            final HotState state = new HotState(new File(
+                    context.getFilesDir(), HOT_STATE));
+            if (!state.load()) {
+                Log.i(TAG, "init state");
+                final SharedPreferences p = PreferenceManager
+                        .getDefaultSharedPreferences(context);
+                state.setPosition(
+                        (int) p.getLong(Preferences.PREFS_LAST_LATITUDE, 0L),
+                        (int) p.getLong(Preferences.PREFS_LAST_LONGITUDE, 0L));
+                state.setNotify(
+                        p.getInt(PREFS_LAST_LEVEL, WarnLevels.LEVEL_NOTHING),
+                        p.getLong(PREFS_LAST_NOTIFY, 0L));
+                p.edit().remove(Preferences.PREFS_LAST_LATITUDE)
+                        .remove(Preferences.PREFS_LAST_LONGITUDE)
+                        .remove(PREFS_LAST_LEVEL).remove(PREFS_LAST_NOTIFY)
+                        .commit();
+            }
+            hotState = state;
+        }
+        return hotState;
     }
 
     /**
      * Check the location.
      *
      * @param context {@link Context}
+     * @param state   {@link HotState}
      */
-    private static void checkLocation(final Context context) {
+    private static void checkLocation(final Context context,
+            final HotState state) {
         Log.d(TAG, "checkLocation()");
         final LocationManager lm = (LocationManager) context
                 .getSystemService(Context.LOCATION_SERVICE);
@@ -180,78 +309,69 @@ public final class LocationChecker extends BroadcastReceiver {
             Log.i(TAG, "no current location known");
             return;
         }
-        boolean foundcell = false;
-        final ContentResolver cr = context.getContentResolver();
-        final Cursor cursor = cr.query(DataProvider.Cells.CONTENT_URI,
-                DataProvider.Cells.PROJECTION, null, null, null);
-        if (cursor.moveToFirst()) {
-            final int idId = cursor.getColumnIndex(DataProvider.Cells.ID);
-            final int idLat = cursor
-                    .getColumnIndex(DataProvider.Cells.LATITUDE);
-            final int idLong = cursor
-                    .getColumnIndex(DataProvider.Cells.LONGITUDE);
-            final int idType = cursor.getColumnIndex(DataProvider.Cells.TYPE);
-            final int idRadius = cursor
-                    .getColumnIndex(DataProvider.Cells.RADIUS);
-            final int idFirstSeen = cursor
-                    .getColumnIndex(DataProvider.Cells.SEEN_FIRST);
-            do {
-                final Location l = new Location(
-                        LocationManager.NETWORK_PROVIDER);
-                final int cLat = cursor.getInt(idLat);
-                final int cLong = cursor.getInt(idLong);
-                l.setLatitude(cLat / 1E6);
-                l.setLongitude(cLong / 1E6);
-                // save last location
-                PreferenceManager.getDefaultSharedPreferences(context).edit()
-                        .putLong(Preferences.PREFS_LAST_LATITUDE, cLat)
-                        .putLong(Preferences.PREFS_LAST_LONGITUDE, cLong)
-                        .commit();
-                if (currentLocation.distanceTo(l) <= cursor.getInt(idRadius)) {
-                    final long id = cursor.getLong(idId);
-                    final int t = cursor.getInt(idType);
-                    Log.i(TAG, "loc in cell: " + id + " / type: " + t);
-                    if (t == 0) {
-                        DataProvider.Logs.closeOpen(context, 0L, false);
-                    } else {
-                        final Cursor c = cr.query(
-                                DataProvider.Logs.CONTENT_URI_OPEN,
-                                DataProvider.Logs.PROJECTION,
-                                DataProvider.Logs.TYPE + " = ?",
-                                new String[]{String.valueOf(t)}, null);
-                        final boolean openNew = c.getCount() == 0;
-                        if (!c.isClosed()) {
-                            c.close();
-                        }
-                        if (openNew) { // skip if already running with same type
-                            DataProvider.Logs.closeOpen(context, 0L, false);
-                            DataProvider.Logs.openNew(context, 0L, t, true);
-                        } else {
-                            Log.i(TAG, "skip open new log with same type");
-                        }
-                    }
-                    ContentValues values = new ContentValues(2);
-                    values.put(DataProvider.Cells.SEEN_LAST,
-                            System.currentTimeMillis());
-                    if (cursor.getLong(idFirstSeen) <= 0L) {
-                        values.put(DataProvider.Cells.SEEN_FIRST,
-                                System.currentTimeMillis());
-                    }
-                    cr.update(ContentUris.withAppendedId(
-                            DataProvider.Cells.CONTENT_URI, id), values, null,
-                            null);
-                    foundcell = true;
-                    break;
-                }
-            } while (cursor.moveToNext());
+        final double lat = currentLocation.getLatitude();
+        final double lon = currentLocation.getLongitude();
+        final CellRegistry.Index cells = CellRegistry.getInstance(context)
+                .getIndex();
+        final int i = cells.find(lat, lon);
+        final boolean foundcell = i >= 0;
+        // save last location: the matching cell or the last one checked
+        final int last = foundcell ? i : cells.size() - 1;
+        if (last >= 0) {
+            state.setPosition(cells.getLatitude(last), cells.getLongitude(last));
         }
-        if (!cursor.isClosed()) {
-            cursor.close();
+        final long now = System.currentTimeMillis();
+
+        // enter and exit cells only after the dwell time, exit outside margin
+        final SharedPreferences p = PreferenceManager
+                .getDefaultSharedPreferences(context);
+        final long dwell = Utils.parseLong(
+                p.getString(Preferences.PREFS_DWELL_TIME, null), 0L)
+                * Utils.MINUTES_IN_MILLIS;
+        final int margin = Math.max(PERCENT, Utils.parseInt(
+                p.getString(Preferences.PREFS_EXIT_MARGIN, null),
+                Preferences.DEFAULT_EXIT_MARGIN));
+        final CellTracker tracker = state.getTracker();
+        final int j = cells.indexOf(tracker.getInside());
+        final boolean inMargin = j >= 0
+                && Geofence.contains(cells.getLatitude(j),
+                cells.getLongitude(j),
+                (int) ((long) cells.getRadius(j) * margin / PERCENT), lat,
+                lon);
+        long found = foundcell ? cells.getId(i) : CellTracker.NONE;
+        if (j >= 0 && j != i && Geofence.contains(cells.getLatitude(j),
+                cells.getLongitude(j), cells.getRadius(j), lat, lon)) {
+            // overlapping cells: stay in the cell we are in
+            found = tracker.getInside();
         }
-        if (!foundcell) {
+        final int transition = tracker.update(now, dwell, inMargin, found);
+        state.setTracker(tracker);
+        Log.d(TAG, "inside: " + tracker.getInside() + " / transition: "
+                + transition);
+
+        if ((transition & CellTracker.EXIT) != 0) {
             // close logs opened by automation
             Log.d(TAG, "close all autoopend logs");
-            DataProvider.Logs.closeOpen(context, 0L, true);
+            DataProvider.Logs.closeOpen(context, tracker.getExitTime(), true);
+        }
+        if (foundcell) {
+            final long id = cells.getId(i);
+            final int t = cells.getType(i);
+            Log.i(TAG, "loc in cell: " + id + " / type: " + t);
+            if ((transition & CellTracker.ENTER) != 0) {
+                // skips if already running with same type
+                DataProvider.Logs.switchOpen(context, tracker.getEnterTime(),
+                        t, true);
+            }
+            ContentValues values = new ContentValues(2);
+            values.put(DataProvider.Cells.SEEN_LAST, now);
+            if (cells.getSeenFirst(i) <= 0L) {
+                values.put(DataProvider.Cells.SEEN_FIRST, now);
+                cells.setSeenFirst(i, now);
+            }
+            context.getContentResolver().update(
+                    ContentUris.withAppendedId(DataProvider.Cells.CONTENT_URI,
+                            id), values, null, null);
         }
     }
 
@@ -270,7 +390,7 @@ public final class LocationChecker extends BroadcastReceiver {
         SharedPreferences p = PreferenceManager
                 .getDefaultSharedPreferences(context);
         switch (level) {
-            case LEVEL_ALERT:
+            case WarnLevels.LEVEL_ALERT:
                 ticker = context.getString(R.string.alert_ticker);
                 title = context.getString(R.string.alert_title);
                 text = context.getString(R.string.alert_text);
@@ -278,7 +398,7 @@ public final class LocationChecker extends BroadcastReceiver {
                 flags = Notification.FLAG_NO_CLEAR
                         | Notification.FLAG_ONGOING_EVENT;
                 break;
-            case LEVEL_WARN:
+            case WarnLevels.LEVEL_WARN:
                 ticker = context.getString(R.string.warn_ticker);
                 title = context.getString(R.string.warn_title);
                 text = context.getString(R.string.warn_text);
@@ -309,44 +429,37 @@ public final class LocationChecker extends BroadcastReceiver {
      * Check warnings and notify user.
      *
      * @param context {@link Context}
+     * @param state   {@link HotState}
      * @return delay to next notification
      */
-    private static long checkWarning(final Context context) {
+    private static long checkWarning(final Context context,
+            final HotState state) {
         Log.d(TAG, "checkWarning()");
         SharedPreferences p = PreferenceManager
                 .getDefaultSharedPreferences(context);
         boolean countTravel = p.getBoolean(Preferences.PREFS_COUNT_TRAVEL,
                 false);
-        final Calendar c = Calendar.getInstance();
-        String where = DataProvider.Logs.FROM_D + "=?";
-        String[] args;
+        final long today = DataProvider.Logs.getEpochDay(System
+                .currentTimeMillis());
+
+        final int[] counted;
         if (countTravel) {
-            where += " AND (" + DataProvider.Logs.TYPE_TYPE + "=? OR "
-                    + DataProvider.Logs.TYPE_TYPE + "=?)";
-            args = new String[]{String.valueOf(c.get(Calendar.DAY_OF_YEAR)),
-                    String.valueOf(DataProvider.Logtypes.TYPE_WORK),
-                    String.valueOf(DataProvider.Logtypes.TYPE_TRAVEL)};
+            counted = new int[]{DataProvider.Logtypes.TYPE_WORK,
+                    DataProvider.Logtypes.TYPE_TRAVEL};
         } else {
-            where += " AND " + DataProvider.Logs.TYPE_TYPE + "=?";
-            args = new String[]{String.valueOf(c.get(Calendar.DAY_OF_YEAR)),
-                    String.valueOf(DataProvider.Logtypes.TYPE_WORK)};
+            counted = new int[]{DataProvider.Logtypes.TYPE_WORK};
         }
-
-        ContentResolver cr = context.getContentResolver();
-        Cursor cursor = cr.query(DataProvider.Logs.CONTENT_URI_OPEN,
-                DataProvider.Logs.PROJECTION, where, args, null);
-        if (!cursor.moveToFirst()) {
-            cursor.close();
+        // any open log of a counted type started today
+        final Bundle open = DataProvider.Logs.getOpen(context, today, counted);
+        if (open.isEmpty()) {
             Log.i(TAG, "no open log");
             NotificationManager nm = (NotificationManager) context
                     .getSystemService(Context.NOTIFICATION_SERVICE);
             Log.d(TAG, "nm.cancel(0)");
             nm.cancel(0);
-            p.edit().remove(PREFS_LAST_LEVEL).remove(PREFS_LAST_NOTIFY)
-                    .commit();
+            state.setNotify(WarnLevels.LEVEL_NOTHING, 0L);
             return -1L; // no open log. no need to notify
         }
-        cursor.close();
 
         final long warn = (long) (Utils.HOUR_IN_MILLIS * Utils.parseFloat(
                 p.getString(Preferences.PREFS_LIMIT_WARN_HOURS, null), 0));
@@ -362,45 +475,27 @@ public final class LocationChecker extends BroadcastReceiver {
                     .getSystemService(Context.NOTIFICATION_SERVICE);
             Log.d(TAG, "nm.cancel(0)");
             nm.cancel(0);
-            p.edit().remove(PREFS_LAST_LEVEL).remove(PREFS_LAST_NOTIFY)
-                    .commit();
+            state.setNotify(WarnLevels.LEVEL_NOTHING, 0L);
             return -1L; // warn=0; alert=0. no need to notify
         }
 
-        cursor = cr.query(DataProvider.Logs.CONTENT_URI,
-                DataProvider.Logs.PROJECTION, where, args, null);
-
-        long d = 0;
-        if (cursor.moveToFirst()) {
-            final int idFrom = cursor.getColumnIndex(DataProvider.Logs.FROM);
-            final int idTo = cursor.getColumnIndex(DataProvider.Logs.TO);
-            do {
-                long from = cursor.getLong(idFrom);
-                long to = cursor.getLong(idTo);
-
-                if (to <= 0L) {
-                    to = c.getTimeInMillis();
-                }
-                d += to - from;
-                Log.d(TAG, "d:    " + d);
-            } while (cursor.moveToNext());
+        final Bundle sums = DataProvider.Logs.getSums(context, today, today);
+        long d = sums.getLong(DataProvider.Logs.SUM_WORK);
+        if (countTravel) {
+            d += sums.getLong(DataProvider.Logs.SUM_TRAVEL);
         }
-        cursor.close();
-
         Log.d(TAG, "d:    " + d);
 
-        int lastLevel = p.getInt(PREFS_LAST_LEVEL, LEVEL_NOTHING);
-        long lastNotify = p.getLong(PREFS_LAST_NOTIFY, 0L);
+        int lastLevel = state.getLevel();
+        long lastNotify = state.getNotify();
         long desiredPeriod = 0L;
         // get current level
-        int level = LEVEL_NOTHING;
-        if (alert > 0L && d > alert) {
-            level = LEVEL_ALERT;
+        final int level = WarnLevels.getLevel(d, warn, alert);
+        if (level == WarnLevels.LEVEL_ALERT) {
             desiredPeriod = Utils.parseLong(
                     p.getString(Preferences.PREFS_LIMIT_ALERT_DELAY, null), 0L)
                     * Utils.N_1000;
-        } else if (warn > 0L && d > warn) {
-            level = LEVEL_WARN;
+        } else if (level == WarnLevels.LEVEL_WARN) {
             desiredPeriod = Utils.parseLong(
                     p.getString(Preferences.PREFS_LIMIT_WARN_DELAY, null), 0L)
                     * Utils.N_1000;
@@ -409,8 +504,8 @@ public final class LocationChecker extends BroadcastReceiver {
         final long now = System.currentTimeMillis();
         Notification n = null;
         // show notification?
-        if (level > LEVEL_NOTHING && (level != lastLevel || // .
-                (desiredPeriod > 0L && lastNotify < now - desiredPeriod))) {
+        if (WarnLevels.isNotify(level, lastLevel, desiredPeriod, lastNotify,
+                now)) {
             Log.d(TAG, "level: " + level);
             Log.d(TAG, "lastLevel: " + lastLevel);
             Log.d(TAG, "desiredPeriod: " + desiredPeriod);
@@ -420,20 +515,18 @@ public final class LocationChecker extends BroadcastReceiver {
         }
         NotificationManager nm = (NotificationManager) context
                 .getSystemService(Context.NOTIFICATION_SERVICE);
-        if (level == LEVEL_NOTHING) {
-            p.edit().remove(PREFS_LAST_LEVEL).remove(PREFS_LAST_NOTIFY)
-                    .commit();
+        if (level == WarnLevels.LEVEL_NOTHING) {
+            state.setNotify(WarnLevels.LEVEL_NOTHING, 0L);
             Log.d(TAG, "nm.cancel(0)");
             nm.cancel(0);
             return -1L;
         } else if (n != null) {
-            p.edit().putInt(PREFS_LAST_LEVEL, level)
-                    .putLong(PREFS_LAST_NOTIFY, now - Utils.N_100).commit();
+            state.setNotify(level, now - Utils.N_100);
             Log.d(TAG, "nm.notify(0, " + n + ")");
             nm.notify(0, n);
             return desiredPeriod;
         } else {
-            return lastNotify - now + desiredPeriod;
+            return WarnLevels.getDelay(desiredPeriod, lastNotify, now);
         }
     }
 
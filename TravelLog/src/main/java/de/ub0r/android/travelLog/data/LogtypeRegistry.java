@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+
+import de.ub0r.android.lib.Log;
+
+/**
+ * In memory copy of all {@link DataProvider.Logtypes}. It is loaded on first
+ * use and dropped whenever the provider notifies a change of
+ * {@link DataProvider.Logtypes#CONTENT_URI}.
+ *
+ * @author flx
+ */
+public final class LogtypeRegistry {
+
+    /**
+     * Tag for output.
+     */
+    private static final String TAG = "ltr";
+
+    /**
+     * Projection used for loading.
+     */
+    private static final String[] PROJECTION = new String[]{
+            DataProvider.Logtypes.ID, DataProvider.Logtypes.NAME,
+            DataProvider.Logtypes.TIME_TYPE};
+
+    /**
+     * Single instance.
+     */
+    private static LogtypeRegistry instance = null;
+
+    /**
+     * {@link ContentResolver}.
+     */
+    private final ContentResolver cr;
+
+    /**
+     * Ids, ordered like {@link DataProvider.Logtypes#CONTENT_URI}.
+     */
+    private int[] ids = null;
+
+    /**
+     * Time types, same order as ids.
+     */
+    private int[] timeTypes;
+
+    /**
+     * Names, same order as ids.
+     */
+    private String[] names;
+
+    /**
+     * Constructor.
+     *
+     * @param context {@link Context}
+     */
+    private LogtypeRegistry(final Context context) {
+        this.cr = context.getApplicationContext().getContentResolver();
+        this.cr.registerContentObserver(DataProvider.Logtypes.CONTENT_URI,
+                true, new ContentObserver(null) {
+                    @Override
+                    public void onChange(final boolean selfChange) {
+                        LogtypeRegistry.this.invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Get the {@link LogtypeRegistry}.
+     *
+     * @param context {@link Context}
+     * @return {@link LogtypeRegistry}
+     */
+    public static synchronized LogtypeRegistry getInstance(
+            final Context context) {
+        if (instance == null) {
+            instance = new LogtypeRegistry(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Drop loaded log types.
+     */
+    private synchronized void invalidate() {
+        Log.d(TAG, "invalidate()");
+        this.ids = null;
+        this.timeTypes = null;
+        this.names = null;
+    }
+
+    /**
+     * Load log types if needed.
+     */
+    private void load() {
+        if (this.ids != null) {
+            return;
+        }
+        Log.d(TAG, "load()");
+        final Cursor cursor = this.cr.query(
+                DataProvider.Logtypes.CONTENT_URI, PROJECTION, null, null,
+                null);
+        int l = 0;
+        if (cursor != null) {
+            l = cursor.getCount();
+        }
+        final int[] newIds = new int[l];
+        final int[] newTimeTypes = new int[l];
+        final String[] newNames = new String[l];
+        if (cursor != null) {
+            int i = 0;
+            while (i < l && cursor.moveToNext()) {
+                newIds[i] = cursor.getInt(0);
+                newNames[i] = cursor.getString(1);
+                newTimeTypes[i] = cursor.getInt(2);
+                ++i;
+            }
+            cursor.close();
+        }
+        this.ids = newIds;
+        this.timeTypes = newTimeTypes;
+        this.names = newNames;
+    }
+
+    /**
+     * Get position of a log type.
+     *
+     * @param id {@link DataProvider.Logtypes#ID}
+     * @return position, -1 if unknown
+     */
+    private int indexOf(final int id) {
+        this.load();
+        final int l = this.ids.length;
+        for (int i = 0; i < l; i++) {
+            if (this.ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get number of log types matching a time type.
+     *
+     * @param timeType {@link DataProvider.Logtypes#TIME_TYPE}, -1 for all
+     * @return number of log types
+     */
+    private int count(final int timeType) {
+        this.load();
+        if (timeType < 0) {
+            return this.ids.length;
+        }
+        int ret = 0;
+        for (int t : this.timeTypes) {
+            if (t == timeType) {
+                ++ret;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get name of a log type.
+     *
+     * @param id {@link DataProvider.Logtypes#ID}
+     * @return {@link DataProvider.Logtypes#NAME}, null if unknown
+     */
+    public synchronized String getName(final int id) {
+        final int i = this.indexOf(id);
+        if (i < 0) {
+            return null;
+        }
+        return this.names[i];
+    }
+
+    /**
+     * Get time type of a log type.
+     *
+     * @param id {@link DataProvider.Logtypes#ID}
+     * @return {@link DataProvider.Logtypes#TIME_TYPE}, 0 if unknown
+     */
+    public synchronized int getTimeType(final int id) {
+        final int i = this.indexOf(id);
+        if (i < 0) {
+            return 0;
+        }
+        return this.timeTypes[i];
+    }
+
+    /**
+     * Get ids of log types.
+     *
+     * @param timeType {@link DataProvider.Logtypes#TIME_TYPE}, -1 for all
+     * @return {@link DataProvider.Logtypes#ID}s
+     */
+    public synchronized int[] getIds(final int timeType) {
+        final int[] ret = new int[this.count(timeType)];
+        final int l = this.ids.length;
+        int j = 0;
+        for (int i = 0; i < l; i++) {
+            if (timeType < 0 || this.timeTypes[i] == timeType) {
+                ret[j] = this.ids[i];
+                ++j;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get names of log types.
+     *
+     * @param timeType {@link DataProvider.Logtypes#TIME_TYPE}, -1 for all
+     * @return {@link DataProvider.Logtypes#NAME}s, same order as getIds()
+     */
+    public synchronized String[] getNames(final int timeType) {
+        final String[] ret = new String[this.count(timeType)];
+        final int l = this.ids.length;
+        int j = 0;
+        for (int i = 0; i < l; i++) {
+            if (timeType < 0 || this.timeTypes[i] == timeType) {
+                ret[j] = this.names[i];
+                ++j;
+            }
+        }
+        return ret;
+    }
+}
@@ -18,6 +18,8 @@
  */
 package de.ub0r.android.travelLog.ui;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -37,15 +39,22 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.ContentObserver;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
 import android.view.View;
 import android.view.Window;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.DatePicker;
 import android.widget.EditText;
 import android.widget.ExpandableListView;
@@ -62,7 +71,9 @@ import de.ub0r.android.lib.ChangelogHelper;
 import de.ub0r.android.lib.Log;
 import de.ub0r.android.lib.Utils;
 import de.ub0r.android.travelLog.R;
+import de.ub0r.android.travelLog.core.Durations;
 import de.ub0r.android.travelLog.data.DataProvider;
+import de.ub0r.android.travelLog.data.LogtypeRegistry;
 
 /**
  * Main {@link SherlockActivity}.
@@ -70,7 +81,7 @@ import de.ub0r.android.travelLog.data.DataProvider;
  * @author flx
  */
 public final class Logs extends SherlockActivity implements
-		OnChildClickListener {
+		OnChildClickListener, OnScrollListener {
 	static {
 		Log.init("TravelLog");
 	}
@@ -81,6 +92,180 @@ public final class Logs extends SherlockActivity implements
 	/** Dialog: clear all data. */
 	private static final int DIALOG_CLEAR = 1;
 
+	/** Number of days loaded at once. */
+	private static final int PAGE_SIZE = 30;
+	/** Load next page if less than this number of items is left below. */
+	private static final int PAGE_PRELOAD = 5;
+
+	/**
+	 * Single page of days. The pages are closed by {@link Logs}, not by the
+	 * {@link LogAdapter}'s {@link MergeCursor}. The logs of all days of a page
+	 * are loaded with a single query and kept partitioned by day.
+	 * 
+	 * @author flx
+	 */
+	private static final class PageCursor extends CursorWrapper {
+		/** Wrapped {@link Cursor}. */
+		private final Cursor page;
+		/** Newest and oldest day of this page. */
+		private final long firstDay, lastDay;
+		/** Loaded days, negated to be sorted ascending. */
+		private long[] days = null;
+		/** First row of each day, followed by the number of rows. */
+		private int[] starts = null;
+		/** Loaded logs, ordered like {@link DataProvider.Logs#PROJECTION_EDIT}. */
+		private Object[][] rows = null;
+		/** Page was closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param cursor
+		 *            wrapped {@link Cursor}
+		 */
+		public PageCursor(final Cursor cursor) {
+			super(cursor);
+			this.page = cursor;
+			final int idFromED = cursor
+					.getColumnIndex(DataProvider.Logs.FROM_ED);
+			if (cursor.moveToFirst()) {
+				this.firstDay = cursor.getLong(idFromED);
+				cursor.moveToLast();
+				this.lastDay = cursor.getLong(idFromED);
+			} else {
+				this.firstDay = -1L;
+				this.lastDay = 0L;
+			}
+		}
+
+		/**
+		 * @return true, if this page holds any days
+		 */
+		boolean hasDays() {
+			return this.firstDay >= this.lastDay;
+		}
+
+		/**
+		 * Get selection for all logs of this page.
+		 * 
+		 * @return selection
+		 */
+		String getWhereDays() {
+			return DataProvider.Logs.FROM_ED + " BETWEEN " + this.lastDay
+					+ " AND " + this.firstDay;
+		}
+
+		/**
+		 * Partition all logs of this page by day.
+		 * 
+		 * @param cursor
+		 *            {@link Cursor} queried with getWhereDays() and
+		 *            {@link DataProvider.Logs#PROJECTION_DAYS}, ordered by day
+		 */
+		void setChildren(final Cursor cursor) {
+			final int l = cursor.getCount();
+			final int cols = DataProvider.Logs.PROJECTION_EDIT.length;
+			final int idFromED = cursor
+					.getColumnIndex(DataProvider.Logs.FROM_ED);
+			final int idComment = cursor
+					.getColumnIndex(DataProvider.Logs.COMMENT);
+			final long[] newDays = new long[l];
+			final int[] newStarts = new int[l + 1];
+			final Object[][] newRows = new Object[l][];
+			int n = 0;
+			long day = 0L;
+			for (int i = 0; i < l && cursor.moveToPosition(i); i++) {
+				final long d = cursor.getLong(idFromED);
+				if (i == 0 || d != day) {
+					day = d;
+					newDays[n] = -d;
+					newStarts[n] = i;
+					++n;
+				}
+				final Object[] row = new Object[cols];
+				for (int j = 0; j < cols; j++) {
+					if (j == idComment) {
+						row[j] = cursor.getString(j);
+					} else {
+						row[j] = cursor.getLong(j);
+					}
+				}
+				newRows[i] = row;
+			}
+			newStarts[n] = l;
+			final long[] d = new long[n];
+			System.arraycopy(newDays, 0, d, 0, n);
+			this.days = d;
+			this.starts = newStarts;
+			this.rows = newRows;
+		}
+
+		/**
+		 * Get the logs of a single day.
+		 * 
+		 * @param day
+		 *            {@link DataProvider.Logs#FROM_ED}
+		 * @return {@link Cursor} with {@link DataProvider.Logs#PROJECTION_EDIT}
+		 *         , null if the day is not part of this page or not loaded yet
+		 */
+		Cursor getChildren(final long day) {
+			if (this.rows == null || day > this.firstDay || day < this.lastDay) {
+				return null;
+			}
+			final MatrixCursor ret = new MatrixCursor(
+					DataProvider.Logs.PROJECTION_EDIT);
+			final int i = Arrays.binarySearch(this.days, -day);
+			if (i >= 0) {
+				for (int j = this.starts[i]; j < this.starts[i + 1]; j++) {
+					ret.addRow(this.rows[j]);
+				}
+			}
+			return ret;
+		}
+
+		/**
+		 * Do not let the {@link LogAdapter} requery the page on changes. A
+		 * requeried page would keep its limit and shift its days against the
+		 * next page. {@link Logs} reloads all pages with requery() instead.
+		 * 
+		 * @param observer
+		 *            {@link ContentObserver}
+		 */
+		@Override
+		public void registerContentObserver(final ContentObserver observer) {
+			// nothing to do
+		}
+
+		/**
+		 * See registerContentObserver().
+		 * 
+		 * @param observer
+		 *            {@link ContentObserver}
+		 */
+		@Override
+		public void unregisterContentObserver(final ContentObserver observer) {
+			// nothing to do
+		}
+
+		/**
+		 * Do not close the page, see closePage().
+		 */
+		@Override
+		public void close() {
+			// nothing to do
+		}
+
+		/**
+		 * Close the wrapped {@link Cursor}.
+		 */
+		void closePage() {
+			this.closed = true;
+			this.rows = null;
+			this.page.close();
+		}
+	}
+
 	/**
 	 * Adapter showing log entries.
 	 * 
@@ -89,9 +274,8 @@ public final class Logs extends SherlockActivity implements
 	private final class LogAdapter extends ResourceCursorTreeAdapter {
 		/** {@link ContentResolver}. */
 		private final ContentResolver cr;
-		/** Where clause used for inner {@link Cursor}. */
-		private static final String INNER_SELECT = DataProvider.Logs.FROM_D
-				+ "= ?";
+		/** {@link LogtypeRegistry}. */
+		private final LogtypeRegistry logtypes;
 		/** {@link DateFormat}. */
 		private final java.text.DateFormat dateFormat;
 		/** {@link DateFormat}. */
@@ -100,6 +284,8 @@ public final class Logs extends SherlockActivity implements
 		private final float textSizeGroup, textSizeChild;
 		/** Count travel time in sum. */
 		private final boolean countTravel;
+		/** Buffer for formatting durations. */
+		private final StringBuilder buf = new StringBuilder();
 
 		/**
 		 * Constructor.
@@ -110,6 +296,7 @@ public final class Logs extends SherlockActivity implements
 		public LogAdapter(final Context context) {
 			super(context, null, R.layout.logs_group, R.layout.logs_child);
 			this.cr = context.getContentResolver();
+			this.logtypes = LogtypeRegistry.getInstance(context);
 			this.dateFormat = DateFormat.getDateFormat(context);
 			this.timeFormat = DateFormat.getTimeFormat(context);
 			this.textSizeGroup = Preferences.getTextSizeGroup(context);
@@ -118,6 +305,24 @@ public final class Logs extends SherlockActivity implements
 					context).getBoolean(Preferences.PREFS_COUNT_TRAVEL, false);
 		}
 
+		/**
+		 * Format a duration into the shared buffer.
+		 * 
+		 * @param label
+		 *            label put in front, may be null
+		 * @param duration
+		 *            duration in milliseconds
+		 * @return formatted duration
+		 */
+		private String formatDuration(final String label, final long duration) {
+			final StringBuilder sb = this.buf;
+			sb.setLength(0);
+			if (label != null) {
+				sb.append(label).append(": ");
+			}
+			return Durations.append(sb, duration).toString();
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -128,19 +333,19 @@ public final class Logs extends SherlockActivity implements
 			final int idTo = cursor.getColumnIndex(DataProvider.Logs.TO);
 			final int idComment = cursor
 					.getColumnIndex(DataProvider.Logs.COMMENT);
-			final int idTypeName = cursor
-					.getColumnIndex(DataProvider.Logs.TYPE_NAME);
+			final int idType = cursor.getColumnIndex(DataProvider.Logs.TYPE);
 			final long from = cursor.getLong(idFrom);
 			final long to = cursor.getLong(idTo);
 			final String comment = cursor.getString(idComment);
-			final String typeName = cursor.getString(idTypeName);
+			final String typeName = this.logtypes.getName(cursor
+					.getInt(idType));
 			long dur = to - from;
 			if (to <= 0L) {
 				dur = System.currentTimeMillis() - from;
 			}
 
 			TextView tv = (TextView) view.findViewById(R.id.time);
-			tv.setText(getTime(dur));
+			tv.setText(this.formatDuration(null, dur));
 			tv.setTextSize(this.textSizeChild);
 
 			String s = this.timeFormat.format(new Date(from));
@@ -195,14 +400,14 @@ public final class Logs extends SherlockActivity implements
 
 			tv = (TextView) view.findViewById(R.id.time);
 			if (tv != null) {
-				tv.setText(getTime(time));
+				tv.setText(this.formatDuration(null, time));
 				tv.setTextSize(this.textSizeGroup);
 			}
 
 			tv = (TextView) view.findViewById(R.id.work);
 			if (sumWork > 0L) {
-				tv.setText(context.getString(R.string.work) + ": "
-						+ getTime(sumWork));
+				tv.setText(this.formatDuration(
+						context.getString(R.string.work), sumWork));
 				tv.setTextSize(this.textSizeChild);
 				tv.setVisibility(View.VISIBLE);
 			} else {
@@ -211,8 +416,8 @@ public final class Logs extends SherlockActivity implements
 
 			tv = (TextView) view.findViewById(R.id.travel);
 			if (sumTravel > 0L) {
-				tv.setText(context.getString(R.string.travel) + ": "
-						+ getTime(sumTravel));
+				tv.setText(this.formatDuration(
+						context.getString(R.string.travel), sumTravel));
 				tv.setTextSize(this.textSizeChild);
 				tv.setVisibility(View.VISIBLE);
 			} else {
@@ -221,8 +426,8 @@ public final class Logs extends SherlockActivity implements
 
 			tv = (TextView) view.findViewById(R.id.pause);
 			if (sumPause > 0L) {
-				tv.setText(context.getString(R.string.pause) + ": "
-						+ getTime(sumPause));
+				tv.setText(this.formatDuration(
+						context.getString(R.string.pause), sumPause));
 				tv.setTextSize(this.textSizeChild);
 				tv.setVisibility(View.VISIBLE);
 			} else {
@@ -240,11 +445,18 @@ public final class Logs extends SherlockActivity implements
 			// .getColumnIndex(DataProvider.Logs.FROM_Y);
 			// final int idFromM = groupCursor
 			// .getColumnIndex(DataProvider.Logs.FROM_M);
-			final int idFromD = groupCursor
-					.getColumnIndex(DataProvider.Logs.FROM_D);
-			return this.cr.query(DataProvider.Logs.CONTENT_URI,
-					DataProvider.Logs.PROJECTION, INNER_SELECT,
-					new String[] { groupCursor.getString(idFromD) },
+			final int idFromED = groupCursor
+					.getColumnIndex(DataProvider.Logs.FROM_ED);
+			final long day = groupCursor.getLong(idFromED);
+			for (PageCursor p : Logs.this.pages) {
+				final Cursor c = p.getChildren(day);
+				if (c != null) {
+					return c;
+				}
+			}
+			// page not loaded yet, notified on changes of this day only
+			return this.cr.query(DataProvider.Logs.getDayUri(day),
+					DataProvider.Logs.PROJECTION_EDIT, null, null,
 					DataProvider.Logs.FROM + " DESC");
 		}
 	}
@@ -257,6 +469,12 @@ public final class Logs extends SherlockActivity implements
 	private final class BackgroundQueryHandler extends AsyncQueryHandler {
 		/** Token for {@link BackgroundQueryHandler}. */
 		private static final int LIST_QUERY_TOKEN = 1;
+		/** Token for {@link BackgroundQueryHandler}: next page. */
+		private static final int PAGE_QUERY_TOKEN = 2;
+		/** Token for {@link BackgroundQueryHandler}: logs of a page. */
+		private static final int CHILDREN_QUERY_TOKEN = 3;
+		/** Token for {@link BackgroundQueryHandler}: open log. */
+		private static final int OPEN_QUERY_TOKEN = 4;
 
 		/**
 		 * A helper class to help make handling asynchronous
@@ -278,9 +496,19 @@ public final class Logs extends SherlockActivity implements
 			Log.d(TAG, "onQueryComplete(" + token + "," + cookie + ",c)");
 			switch (token) {
 			case LIST_QUERY_TOKEN:
-				Logs.this.requery(cursor);
+				Logs.this.requery(cursor, false, (Integer) cookie);
 				Logs.this.setProgressBarIndeterminateVisibility(false);
 				return;
+			case PAGE_QUERY_TOKEN:
+				Logs.this.requery(cursor, true, (Integer) cookie);
+				Logs.this.setProgressBarIndeterminateVisibility(false);
+				return;
+			case CHILDREN_QUERY_TOKEN:
+				Logs.this.setChildren((PageCursor) cookie, cursor);
+				return;
+			case OPEN_QUERY_TOKEN:
+				Logs.this.setOpen(cursor);
+				return;
 			default:
 				return;
 			}
@@ -313,6 +541,17 @@ public final class Logs extends SherlockActivity implements
 	/** {@link BackgroundQueryHandler}. */
 	private BackgroundQueryHandler queryHandler = null;
 
+	/** Loaded pages of days. */
+	private final ArrayList<PageCursor> pages = new ArrayList<PageCursor>();
+	/** Next page is loading. */
+	private boolean loadingPage = false;
+	/** More pages are available. */
+	private boolean hasMorePages = false;
+	/** Reload the loaded logs of all pages on changes. */
+	private ContentObserver logsObserver = null;
+	/** Reload all pages of days on changes. */
+	private ContentObserver daysObserver = null;
+
 	/** {@link MenuItem}s . */
 	private MenuItem stopItem, workItem, pauseItem, travelItem;
 	/** Show {@link MenuItem}s. */
@@ -336,13 +575,30 @@ public final class Logs extends SherlockActivity implements
 				.findViewById(android.R.id.list);
 		lv.setAdapter(new LogAdapter(this));
 		lv.setOnChildClickListener(this);
+		lv.setOnScrollListener(this);
+		this.logsObserver = new ContentObserver(new Handler()) {
+			@Override
+			public void onChange(final boolean selfChange) {
+				Logs.this.loadChildren();
+			}
+		};
+		this.getContentResolver().registerContentObserver(
+				DataProvider.Logs.CONTENT_URI, true, this.logsObserver);
+		this.daysObserver = new ContentObserver(new Handler()) {
+			@Override
+			public void onChange(final boolean selfChange) {
+				Logs.this.requery();
+			}
+		};
+		this.getContentResolver().registerContentObserver(
+				DataProvider.Logs.CONTENT_URI_SUM, false, this.daysObserver);
 
 		if (savedInstanceState == null) {
 			ChangelogHelper.showChangelog(this,
 					this.getString(R.string.changelog_),
 					this.getString(R.string.app_name), R.array.updates, -1);
 		}
-		this.changeState(0, 0, true);
+		this.loadOpen();
 	}
 
 	/**
@@ -352,15 +608,10 @@ public final class Logs extends SherlockActivity implements
 	public boolean onCreateOptionsMenu(final Menu menu) {
 		this.getSupportMenuInflater().inflate(R.menu.menu, menu);
 		this.stopItem = menu.findItem(R.id.item_stop);
-		if (this.stopItem != null) {
-			this.stopItem.setVisible(this.showStopItem);
-			if (this.showStopItem) {
-				this.changeState(0, 0, true);
-			}
-		}
 		this.pauseItem = menu.findItem(R.id.start_pause_);
 		this.travelItem = menu.findItem(R.id.start_travel_);
 		this.workItem = menu.findItem(R.id.start_work_);
+		this.setItemsVisible();
 		return true;
 	}
 
@@ -454,6 +705,46 @@ public final class Logs extends SherlockActivity implements
 		super.onPause();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		final ExpandableListView lv = (ExpandableListView) this
+				.findViewById(android.R.id.list);
+		((LogAdapter) lv.getExpandableListAdapter()).changeCursor(null);
+		this.getContentResolver().unregisterContentObserver(this.logsObserver);
+		this.getContentResolver().unregisterContentObserver(this.daysObserver);
+		this.queryHandler
+				.cancelOperation(BackgroundQueryHandler.CHILDREN_QUERY_TOKEN);
+		this.queryHandler
+				.cancelOperation(BackgroundQueryHandler.OPEN_QUERY_TOKEN);
+		this.closePages(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onScroll(final AbsListView view, final int firstVisibleItem,
+			final int visibleItemCount, final int totalItemCount) {
+		if (this.hasMorePages && !this.loadingPage && totalItemCount > 0
+				&& firstVisibleItem + visibleItemCount + PAGE_PRELOAD // .
+				>= totalItemCount) {
+			this.loadPage();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onScrollStateChanged(final AbsListView view,
+			final int scrollState) {
+		// nothing to do
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -511,16 +802,16 @@ public final class Logs extends SherlockActivity implements
 		}
 		final StringBuilder buf = new StringBuilder();
 
+		final LogtypeRegistry logtypes = LogtypeRegistry.getInstance(this);
 		final Cursor cursor = this.getContentResolver().query(
-				DataProvider.Logs.CONTENT_URI, DataProvider.Logs.PROJECTION,
-				null, null, sortOrder);
+				DataProvider.Logs.CONTENT_URI,
+				DataProvider.Logs.PROJECTION_EDIT, null, null, sortOrder);
 		if (cursor.moveToFirst()) {
 			final int idFrom = cursor.getColumnIndex(DataProvider.Logs.FROM);
 			final int idTo = cursor.getColumnIndex(DataProvider.Logs.TO);
 			final int idComment = cursor
 					.getColumnIndex(DataProvider.Logs.COMMENT);
-			final int idTypeName = cursor
-					.getColumnIndex(DataProvider.Logs.TYPE_NAME);
+			final int idType = cursor.getColumnIndex(DataProvider.Logs.TYPE);
 			final java.text.DateFormat dateFormat = DateFormat
 					.getDateFormat(this);
 			final java.text.DateFormat timeFormat = DateFormat
@@ -543,9 +834,9 @@ public final class Logs extends SherlockActivity implements
 					buf.append("??:??");
 				}
 				buf.append("\t ");
-				buf.append(getTime(dur));
+				Durations.append(buf, dur);
 				buf.append("\t ");
-				buf.append(cursor.getString(idTypeName));
+				buf.append(logtypes.getName(cursor.getInt(idType)));
 				String s = cursor.getString(idComment);
 				if (!TextUtils.isEmpty(s)) {
 					buf.append("\t ");
@@ -567,49 +858,6 @@ public final class Logs extends SherlockActivity implements
 		this.startActivity(in);
 	}
 
-	/**
-	 * Parse number of seconds to a readable time format.
-	 * 
-	 * @param milliseconds
-	 *            milliseconds
-	 * @return parsed string
-	 */
-	static String getTime(final long milliseconds) {
-		String ret;
-		Calendar cal = Calendar.getInstance();
-		cal.setTimeInMillis(milliseconds);
-		int seconds = (int) (milliseconds / 1000);
-		int d = seconds / 86400;
-		int h = (seconds % 86400) / 3600;
-		int m = (seconds % 3600) / 60;
-		if (d > 0) {
-			ret = d + "d ";
-		} else {
-			ret = "";
-		}
-		if (h > 0 || d > 0) {
-			if (h < 10) {
-				ret += "0";
-			}
-			ret += h + ":";
-		}
-		if (m > 0 || h > 0 || d > 0) {
-			if (m < 10 && h > 0) {
-				ret += "0";
-			}
-		}
-		if (d == 0 && h == 0) {
-			if (m > 0) {
-				ret += m + "min";
-			} else {
-				ret += seconds + "s";
-			}
-		} else {
-			ret += m;
-		}
-		return ret;
-	}
-
 	/**
 	 * Change state.
 	 * 
@@ -619,34 +867,15 @@ public final class Logs extends SherlockActivity implements
 	private void changeState(final int logTypeType) {
 		Log.d(TAG, "changeState(" + logTypeType + ")");
 		if (logTypeType == 0) {
-			this.changeState(0, 0, false);
+			this.changeState(0, 0);
 		} else {
-			Cursor cursor = this.getContentResolver().query(
-					DataProvider.Logtypes.CONTENT_URI,
-					DataProvider.Logtypes.PROJECTION,
-					DataProvider.Logtypes.TIME_TYPE + " = ?",
-					new String[] { String.valueOf(logTypeType) }, null);
-			int l = cursor.getCount();
-			final int[] ids = new int[l];
-			final String[] names = new String[l];
-			final int idId = cursor.getColumnIndex(DataProvider.Logtypes.ID);
-			final int idName = cursor
-					.getColumnIndex(DataProvider.Logtypes.NAME);
-			if (cursor.moveToFirst()) {
-				int i = 0;
-				do {
-					ids[i] = cursor.getInt(idId);
-					names[i] = cursor.getString(idName);
-					++i;
-				} while (cursor.moveToNext() && i <= l);
-			}
-			if (!cursor.isClosed()) {
-				cursor.close();
-			}
-			cursor = null;
+			final LogtypeRegistry logtypes = LogtypeRegistry.getInstance(this);
+			final int[] ids = logtypes.getIds(logTypeType);
+			final String[] names = logtypes.getNames(logTypeType);
+			final int l = ids.length;
 			if (l == 1) {
 				Log.d(TAG, "choose the only existing logtype: " + ids[0]);
-				Logs.this.changeState(logTypeType, ids[0], false);
+				Logs.this.changeState(logTypeType, ids[0]);
 			} else {
 				AlertDialog.Builder b = new AlertDialog.Builder(this);
 				switch (logTypeType) {
@@ -666,7 +895,7 @@ public final class Logs extends SherlockActivity implements
 					@Override
 					public void onClick(final DialogInterface dialog,
 							final int which) {
-						Logs.this.changeState(logTypeType, ids[which], false);
+						Logs.this.changeState(logTypeType, ids[which]);
 					}
 				});
 				b.show();
@@ -681,60 +910,85 @@ public final class Logs extends SherlockActivity implements
 	 *            type of log type
 	 * @param logTypeId
 	 *            id of log type
-	 * @param btnOnly
-	 *            set buttons only, do not modify items
 	 */
-	private void changeState(final int logTypeType, final int logTypeId,
-			final boolean btnOnly) {
+	private void changeState(final int logTypeType, final int logTypeId) {
 		Log.d(TAG, "changeState(" + logTypeType + "," + logTypeId + ")");
-		final ContentResolver cr = this.getContentResolver();
-		if (!btnOnly) { // change state of logs
-			DataProvider.Logs.closeOpen(this, 0L, false);
-			if (logTypeType > 0) {
-				DataProvider.Logs.openNew(this, 0L, logTypeId, false);
-			}
+		int logType = 0;
+		int type = 0;
+		if (logTypeType > 0) {
+			type = logTypeId;
 		}
+		if (DataProvider.Logs.switchOpen(this, 0L, type, false) != null) {
+			logType = logTypeType;
+		}
+		this.setButtons(logType);
+		this.requery();
+	}
 
-		// set buttons
-		Cursor cursor = cr.query(DataProvider.Logs.CONTENT_URI_OPEN,
-				DataProvider.Logs.PROJECTION, null, null, null);
-		if (cursor.moveToFirst()) { // a log is open
-			final int idLogTypeType = cursor
-					.getColumnIndex(DataProvider.Logs.TYPE_TYPE);
-			final int logType = cursor.getInt(idLogTypeType);
-			int resId = -1;
-			this.showStopItem = true;
-			switch (logType) {
-			case DataProvider.Logtypes.TYPE_PAUSE:
-				this.showPauseItem = false;
-				this.showTravelItem = true;
-				this.showWorkItem = true;
-				break;
-			case DataProvider.Logtypes.TYPE_TRAVEL:
-				this.showPauseItem = true;
-				this.showTravelItem = false;
-				this.showWorkItem = true;
-				break;
-			case DataProvider.Logtypes.TYPE_WORK:
-				this.showPauseItem = true;
-				this.showTravelItem = true;
-				this.showWorkItem = false;
-				break;
-			default:
-				this.showStopItem = false;
-				this.showPauseItem = true;
-				this.showTravelItem = true;
-				this.showWorkItem = true;
-			}
-		} else { // no log is open
+	/**
+	 * Load the open log in background and set buttons.
+	 */
+	private void loadOpen() {
+		this.queryHandler
+				.cancelOperation(BackgroundQueryHandler.OPEN_QUERY_TOKEN);
+		this.queryHandler.startQuery(BackgroundQueryHandler.OPEN_QUERY_TOKEN,
+				null, DataProvider.Logs.CONTENT_URI_OPEN,
+				DataProvider.Logs.PROJECTION_OPEN, null, null, null);
+	}
+
+	/**
+	 * Set buttons for the open log.
+	 * 
+	 * @param cursor
+	 *            {@link Cursor} started by loadOpen()
+	 */
+	private void setOpen(final Cursor cursor) {
+		if (cursor == null) {
+			return;
+		}
+		final int logType = DataProvider.Logs.getOpen(cursor).getInt(
+				DataProvider.Logs.TYPE_TYPE, 0);
+		cursor.close();
+		this.setButtons(logType);
+	}
+
+	/**
+	 * Set buttons.
+	 * 
+	 * @param logType
+	 *            type of log type of the open log, 0 for none
+	 */
+	private void setButtons(final int logType) {
+		this.showStopItem = true;
+		switch (logType) {
+		case DataProvider.Logtypes.TYPE_PAUSE:
+			this.showPauseItem = false;
+			this.showTravelItem = true;
+			this.showWorkItem = true;
+			break;
+		case DataProvider.Logtypes.TYPE_TRAVEL:
+			this.showPauseItem = true;
+			this.showTravelItem = false;
+			this.showWorkItem = true;
+			break;
+		case DataProvider.Logtypes.TYPE_WORK:
+			this.showPauseItem = true;
+			this.showTravelItem = true;
+			this.showWorkItem = false;
+			break;
+		default: // no log is open
 			this.showStopItem = false;
 			this.showPauseItem = true;
 			this.showTravelItem = true;
 			this.showWorkItem = true;
 		}
-		if (!cursor.isClosed()) {
-			cursor.close();
-		}
+		this.setItemsVisible();
+	}
+
+	/**
+	 * Show {@link MenuItem}s matching the open log.
+	 */
+	private void setItemsVisible() {
 		if (this.stopItem != null) {
 			this.stopItem.setVisible(this.showStopItem);
 		}
@@ -747,10 +1001,6 @@ public final class Logs extends SherlockActivity implements
 		if (this.workItem != null) {
 			this.workItem.setVisible(this.showWorkItem);
 		}
-
-		if (!btnOnly) {
-			this.requery();
-		}
 	}
 
 	/**
@@ -762,20 +1012,126 @@ public final class Logs extends SherlockActivity implements
 		this.queryHandler
 				.cancelOperation(BackgroundQueryHandler.LIST_QUERY_TOKEN);
 		try {
-			// Kick off the new query
+			// Kick off the new query, reload all days shown before
 			this.setProgressBarIndeterminateVisibility(true);
-			final String v = String.valueOf(System.currentTimeMillis());
-			final String[] p = DataProvider.Logs.PROJECTION_SUM.clone();
-			final int l = p.length;
-			for (int i = 0; i < l; i++) {
-				p[i] = p[i].replace("?", v);
-				Log.d(TAG, "p[" + i + "] = " + p[i]);
-			}
-			this.queryHandler.startQuery(
-					BackgroundQueryHandler.LIST_QUERY_TOKEN, null,
-					DataProvider.Logs.CONTENT_URI_SUM, p, null, null, null);
+			this.queryHandler
+					.cancelOperation(BackgroundQueryHandler.PAGE_QUERY_TOKEN);
+			this.loadingPage = false;
+			final ExpandableListView lv = (ExpandableListView) this
+					.findViewById(android.R.id.list);
+			final int limit = Math.max(PAGE_SIZE, lv
+					.getExpandableListAdapter().getGroupCount());
+			this.startQuery(BackgroundQueryHandler.LIST_QUERY_TOKEN, limit,
+					-1L);
+		} catch (SQLiteException e) {
+			Log.e(TAG, "error starting query", e);
+		}
+	}
+
+	/**
+	 * Load next page of days.
+	 */
+	private void loadPage() {
+		Log.d(TAG, "loadPage()");
+		final ExpandableListView lv = (ExpandableListView) this
+				.findViewById(android.R.id.list);
+		final LogAdapter adapter = (LogAdapter) lv.getExpandableListAdapter();
+		final int l = adapter.getGroupCount();
+		if (l == 0) {
+			return;
+		}
+		this.loadingPage = true;
+		try {
+			this.setProgressBarIndeterminateVisibility(true);
+			this.startQuery(BackgroundQueryHandler.PAGE_QUERY_TOKEN,
+					PAGE_SIZE, adapter.getGroupId(l - 1));
 		} catch (SQLiteException e) {
 			Log.e(TAG, "error starting query", e);
+			this.loadingPage = false;
+		}
+	}
+
+	/**
+	 * Start query for days.
+	 * 
+	 * @param token
+	 *            token for {@link BackgroundQueryHandler}
+	 * @param limit
+	 *            number of days
+	 * @param beforeDay
+	 *            load days before this day, -1 for the latest days
+	 */
+	private void startQuery(final int token, final int limit,
+			final long beforeDay) {
+		this.queryHandler.startQuery(token, limit, DataProvider.Logs
+				.getPageUri(DataProvider.Logs.CONTENT_URI_SUM, limit,
+						beforeDay, -1L, -1L), DataProvider.Logs.PROJECTION_SUM,
+				null, null, null);
+	}
+
+	/**
+	 * Load logs of all pages again.
+	 */
+	private void loadChildren() {
+		Log.d(TAG, "loadChildren()");
+		this.queryHandler
+				.cancelOperation(BackgroundQueryHandler.CHILDREN_QUERY_TOKEN);
+		for (PageCursor p : this.pages) {
+			this.loadChildren(p);
+		}
+	}
+
+	/**
+	 * Load logs of all days of a page in background. Pages are loaded ahead
+	 * of scrolling, so are their logs.
+	 * 
+	 * @param page
+	 *            {@link PageCursor}
+	 */
+	private void loadChildren(final PageCursor page) {
+		if (!page.hasDays()) {
+			return;
+		}
+		this.queryHandler.startQuery(
+				BackgroundQueryHandler.CHILDREN_QUERY_TOKEN, page,
+				DataProvider.Logs.CONTENT_URI,
+				DataProvider.Logs.PROJECTION_DAYS, page.getWhereDays(), null,
+				DataProvider.Logs.FROM_ED + " DESC, " + DataProvider.Logs.FROM
+						+ " DESC");
+	}
+
+	/**
+	 * Set loaded logs of a page.
+	 * 
+	 * @param page
+	 *            {@link PageCursor}
+	 * @param cursor
+	 *            {@link Cursor} started by loadChildren()
+	 */
+	private void setChildren(final PageCursor page, final Cursor cursor) {
+		if (cursor == null) {
+			return;
+		}
+		if (!page.closed && !cursor.isClosed()) {
+			page.setChildren(cursor);
+			final ExpandableListView lv = (ExpandableListView) this
+					.findViewById(android.R.id.list);
+			// drop children cursors read before
+			((LogAdapter) lv.getExpandableListAdapter())
+					.notifyDataSetChanged(true);
+		}
+		cursor.close();
+	}
+
+	/**
+	 * Close pages.
+	 * 
+	 * @param keep
+	 *            number of pages to keep
+	 */
+	private void closePages(final int keep) {
+		while (this.pages.size() > keep) {
+			this.pages.remove(0).closePage();
 		}
 	}
 
@@ -784,23 +1140,44 @@ public final class Logs extends SherlockActivity implements
 	 * 
 	 * @param cursor
 	 *            new {@link Cursor}
+	 * @param append
+	 *            append cursor as next page, replace all pages otherwise
+	 * @param limit
+	 *            number of days requested
 	 */
-	private void requery(final Cursor cursor) {
+	private void requery(final Cursor cursor, final boolean append,
+			final int limit) {
 		final ExpandableListView lv = (ExpandableListView) this
 				.findViewById(android.R.id.list);
-		Cursor c = ((LogAdapter) lv.getExpandableListAdapter()).getCursor();
-		if (c != null && !c.isClosed()) {
-			c.close();
+		final LogAdapter adapter = (LogAdapter) lv.getExpandableListAdapter();
+		if (append) {
+			this.loadingPage = false;
 		}
-		c = null;
-		if (cursor != null && !cursor.isClosed() && cursor.getCount() > 0) {
+		if (cursor == null || cursor.isClosed()) {
+			return;
+		}
+		this.hasMorePages = cursor.getCount() >= limit;
+		if (append && cursor.getCount() == 0) {
+			cursor.close();
+			return;
+		}
+		final PageCursor page = new PageCursor(cursor);
+		this.pages.add(page);
+		this.loadChildren(page);
+		final int oldPages = this.pages.size() - 1;
+		if (cursor.getCount() > 0 || append) {
 			this.findViewById(R.id.hint).setVisibility(View.GONE);
 			try {
-				final boolean expandFirst = lv.isGroupExpanded(0)
-						|| ((LogAdapter) lv.getExpandableListAdapter())
-								.getGroupCount() == 0;
-				((LogAdapter) lv.getExpandableListAdapter())
-						.setGroupCursor(cursor);
+				final boolean expandFirst = !append
+						&& (lv.isGroupExpanded(0) || adapter.getGroupCount() // .
+						== 0);
+				if (append) {
+					adapter.setGroupCursor(new MergeCursor(this.pages
+							.toArray(new Cursor[oldPages + 1])));
+				} else {
+					adapter.setGroupCursor(new MergeCursor(
+							new Cursor[] { this.pages.get(oldPages) }));
+				}
 				if (expandFirst) {
 					lv.collapseGroup(0);
 					lv.expandGroup(0);
@@ -811,10 +1188,14 @@ public final class Logs extends SherlockActivity implements
 			}
 			lv.setVisibility(View.VISIBLE);
 		} else {
+			adapter.setGroupCursor(null);
 			lv.setVisibility(View.GONE);
 			this.findViewById(R.id.hint).setVisibility(View.VISIBLE);
 		}
-		this.changeState(0, 0, true);
+		if (!append) {
+			this.closePages(1);
+		}
+		this.loadOpen();
 	}
 
 	/**
@@ -831,7 +1212,7 @@ public final class Logs extends SherlockActivity implements
 
 		final EditText et = new EditText(this);
 		Cursor cursor = this.getContentResolver().query(target,
-				DataProvider.Logs.PROJECTION, null, null, null);
+				DataProvider.Logs.PROJECTION_EDIT, null, null, null);
 		int idComment = cursor.getColumnIndex(DataProvider.Logs.COMMENT);
 		if (cursor.moveToFirst()) {
 			et.setText(cursor.getString(idComment));
@@ -867,7 +1248,7 @@ public final class Logs extends SherlockActivity implements
 	 */
 	private void changeDate(final Uri target) {
 		Cursor cursor = this.getContentResolver().query(target,
-				DataProvider.Logs.PROJECTION, null, null, null);
+				DataProvider.Logs.PROJECTION_INTERVAL, null, null, null);
 		int idFrom = cursor.getColumnIndex(DataProvider.Logs.FROM);
 		int idTo = cursor.getColumnIndex(DataProvider.Logs.TO);
 		final Calendar cal = Calendar.getInstance();
@@ -892,6 +1273,7 @@ public final class Logs extends SherlockActivity implements
 			}, cal.get(Calendar.YEAR), cal.get(Calendar.MONTH),
 					cal.get(Calendar.DAY_OF_MONTH)).show();
 		}
+		cursor.close();
 	}
 
 	/**
@@ -904,7 +1286,7 @@ public final class Logs extends SherlockActivity implements
 	 */
 	private void changeTime(final Uri target, final String field) {
 		Cursor cursor = this.getContentResolver().query(target,
-				DataProvider.Logs.PROJECTION, null, null, null);
+				DataProvider.Logs.PROJECTION_INTERVAL, null, null, null);
 		if (cursor.moveToFirst()) {
 			final int idTime = cursor.getColumnIndex(field);
 			final long time = cursor.getLong(idTime);
@@ -937,6 +1319,7 @@ public final class Logs extends SherlockActivity implements
 			res = null;
 			d.show();
 		}
+		cursor.close();
 	}
 
 	/**
@@ -946,26 +1329,9 @@ public final class Logs extends SherlockActivity implements
 	 *            target log entry.
 	 */
 	private void changeType(final Uri target) {
-		Cursor cursor = this.getContentResolver().query(
-				DataProvider.Logtypes.CONTENT_URI,
-				DataProvider.Logtypes.PROJECTION, null, null, null);
-		int l = cursor.getCount();
-		final int[] ids = new int[l];
-		final String[] names = new String[l];
-		final int idId = cursor.getColumnIndex(DataProvider.Logtypes.ID);
-		final int idName = cursor.getColumnIndex(DataProvider.Logtypes.NAME);
-		if (cursor.moveToFirst()) {
-			int i = 0;
-			do {
-				ids[i] = cursor.getInt(idId);
-				names[i] = cursor.getString(idName);
-				++i;
-			} while (cursor.moveToNext() && i <= l);
-		}
-		if (!cursor.isClosed()) {
-			cursor.close();
-		}
-		cursor = null;
+		final LogtypeRegistry logtypes = LogtypeRegistry.getInstance(this);
+		final int[] ids = logtypes.getIds(-1);
+		final String[] names = logtypes.getNames(-1);
 		AlertDialog.Builder b = new AlertDialog.Builder(Logs.this);
 		String[] res = Logs.this.getResources().getStringArray(
 				R.array.action_child);
@@ -40,11 +40,11 @@ import android.os.Bundle;
 import android.text.format.DateFormat;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.EditText;
-import android.widget.SimpleCursorAdapter;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -55,6 +55,7 @@ import de.ub0r.android.lib.Log;
 import de.ub0r.android.lib.Utils;
 import de.ub0r.android.travelLog.R;
 import de.ub0r.android.travelLog.data.DataProvider;
+import de.ub0r.android.travelLog.data.LogtypeRegistry;
 
 /**
  * {@link SherlockActivity} showing all auto logs.
@@ -291,11 +292,10 @@ public final class Map extends SherlockActivity implements GoogleMap.OnMarkerDra
         LayoutInflater inflater = LayoutInflater.from(this);
         View v = inflater.inflate(R.layout.map_item_add, null);
         final Spinner sp = (Spinner) v.findViewById(R.id.type);
-        SimpleCursorAdapter adapter = new SimpleCursorAdapter(this,
-                android.R.layout.simple_spinner_item, this.getContentResolver()
-                .query(DataProvider.Logtypes.CONTENT_URI, DataProvider.Logtypes.PROJECTION, null,
-                        null, null), new String[]{DataProvider.Logtypes.NAME},
-                new int[]{android.R.id.text1});
+        final LogtypeRegistry logtypes = LogtypeRegistry.getInstance(this);
+        final int[] typeIds = logtypes.getIds(-1);
+        ArrayAdapter<String> adapter = new ArrayAdapter<String>(this,
+                android.R.layout.simple_spinner_item, logtypes.getNames(-1));
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         sp.setAdapter(adapter);
         final CheckBox cb = (CheckBox) v.findViewById(R.id.nulltype);
@@ -331,8 +331,9 @@ public final class Map extends SherlockActivity implements GoogleMap.OnMarkerDra
                             final int which) {
                         final int radius = Utils.parseInt(et.getText().toString(), 0);
                         int type = 0;
-                        if (!cb.isChecked()) {
-                            type = (int) sp.getSelectedItemId();
+                        final int pos = sp.getSelectedItemPosition();
+                        if (!cb.isChecked() && pos >= 0) {
+                            type = typeIds[pos];
                         }
                         if (oldItem >= 0) {
                             ContentValues values = new ContentValues(2);
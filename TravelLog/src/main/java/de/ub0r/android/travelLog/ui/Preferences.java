@@ -56,6 +56,12 @@ public final class Preferences extends PreferenceActivity implements
 
 	/** Preference's name: update interval. */
 	public static final String PREFS_UPDATE_INTERVAL = "update_interval";
+	/** Preference's name: dwell time. */
+	public static final String PREFS_DWELL_TIME = "dwell_time";
+	/** Preference's name: exit margin. */
+	public static final String PREFS_EXIT_MARGIN = "exit_margin";
+	/** Default exit margin in percent of a cell's radius. */
+	public static final int DEFAULT_EXIT_MARGIN = 150;
 	/** Preference's name: last latitude. */
 	public static final String PREFS_LAST_LATITUDE = "last_lat";
 	/** Preference's name: last longitude. */
@@ -63,6 +69,24 @@ public final class Preferences extends PreferenceActivity implements
 
 	/** Preference's name: round. */
 	private static final String PREFS_ROUND = "round";
+	/** Cached round, -1 if not loaded. */
+	private static volatile int round = -1;
+	/** True, if ROUND_LISTENER is registered. */
+	private static boolean roundListening = false;
+	/**
+	 * Drop cached round on change. Held here, {@link SharedPreferences} only
+	 * keeps weak references to its listeners.
+	 */
+	private static final SharedPreferences.OnSharedPreferenceChangeListener // .
+	ROUND_LISTENER = new SharedPreferences.OnSharedPreferenceChangeListener() {
+		@Override
+		public void onSharedPreferenceChanged(
+				final SharedPreferences sharedPreferences, final String key) {
+			if (PREFS_ROUND.equals(key)) {
+				round = -1;
+			}
+		}
+	};
 	/** Preference's name: theme. */
 	private static final String PREFS_THEME = "theme";
 	/** Theme: black. */
@@ -290,11 +314,21 @@ public final class Preferences extends PreferenceActivity implements
 	 * @return round
 	 */
 	public static int getRound(final Context context) {
-		final SharedPreferences p = PreferenceManager
-				.getDefaultSharedPreferences(context);
-		final String s = p.getString(PREFS_ROUND, null);
-		return Utils.parseInt(s, 0);
-
+		int ret = round;
+		if (ret < 0) {
+			final SharedPreferences p = PreferenceManager
+					.getDefaultSharedPreferences(context);
+			synchronized (ROUND_LISTENER) {
+				if (!roundListening) {
+					p.registerOnSharedPreferenceChangeListener(ROUND_LISTENER);
+					roundListening = true;
+				}
+			}
+			final String s = p.getString(PREFS_ROUND, null);
+			ret = Utils.parseInt(s, 0);
+			round = ret;
+		}
+		return ret;
 	}
 
 	/**
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark {@link CellGrid} against the linear scan it replaces.
+ *
+ * @author flx
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CellGridBenchmark {
+    /** Number of fixes. */
+    private static final int COUNT = 1024;
+
+    /** Number of cells. */
+    @Param({ "10", "1000", "100000" })
+    public int cells;
+
+    /** Cell latitudes. */
+    private int[] cellLatitudes;
+    /** Cell longitudes. */
+    private int[] cellLongitudes;
+    /** Cell radii. */
+    private int[] cellRadii;
+    /** Grid under test. */
+    private CellGrid grid;
+    /** Latitudes of fixes. */
+    private final double[] latitudes = new double[COUNT];
+    /** Longitudes of fixes. */
+    private final double[] longitudes = new double[COUNT];
+    /** Current fix. */
+    private int i = 0;
+
+    /**
+     * Set up cells and fixes spread over a country.
+     */
+    @Setup
+    public void setUp() {
+        final Random r = new Random(42);
+        this.cellLatitudes = new int[this.cells];
+        this.cellLongitudes = new int[this.cells];
+        this.cellRadii = new int[this.cells];
+        for (int k = 0; k < this.cells; k++) {
+            this.cellLatitudes[k] = 47000000 + r.nextInt(8000000);
+            this.cellLongitudes[k] = 6000000 + r.nextInt(9000000);
+            this.cellRadii[k] = 50 + r.nextInt(2000);
+        }
+        this.grid = new CellGrid(this.cellLatitudes, this.cellLongitudes,
+                this.cellRadii);
+        for (int k = 0; k < COUNT; k++) {
+            this.latitudes[k] = 47d + r.nextDouble() * 8d;
+            this.longitudes[k] = 6d + r.nextDouble() * 9d;
+        }
+    }
+
+    /**
+     * @return index of cell
+     */
+    @Benchmark
+    public int find() {
+        this.i = (this.i + 1) & (COUNT - 1);
+        return this.grid.find(this.latitudes[this.i], this.longitudes[this.i]);
+    }
+
+    /**
+     * @return index of cell
+     */
+    @Benchmark
+    public int findLinear() {
+        this.i = (this.i + 1) & (COUNT - 1);
+        final double lat = this.latitudes[this.i];
+        final double lon = this.longitudes[this.i];
+        for (int k = 0; k < this.cells; k++) {
+            if (Geofence.contains(this.cellLatitudes[k],
+                    this.cellLongitudes[k], this.cellRadii[k], lat, lon)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark {@link Durations}.
+ *
+ * @author flx
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DurationsBenchmark {
+    /** Durations from seconds to days. */
+    private static final long[] DURATIONS = { 42000L, 754000L, 3599000L,
+            5423000L, 36000000L, 90061000L, 360000000L, -5423000L };
+
+    /** Reused buffer. */
+    private final StringBuilder sb = new StringBuilder();
+    /** Current duration. */
+    private int i = 0;
+
+    /**
+     * @return next duration
+     */
+    private long next() {
+        this.i = (this.i + 1) & (DURATIONS.length - 1);
+        return DURATIONS[this.i];
+    }
+
+    /**
+     * @return formatted duration
+     */
+    @Benchmark
+    public String format() {
+        return Durations.format(this.next());
+    }
+
+    /**
+     * @return buffer holding the formatted duration
+     */
+    @Benchmark
+    public StringBuilder append() {
+        this.sb.setLength(0);
+        return Durations.append(this.sb, this.next());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark {@link Geofence}.
+ *
+ * @author flx
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeofenceBenchmark {
+    /** Number of fixes. */
+    private static final int COUNT = 1024;
+    /** Cell latitude. */
+    private static final int LATITUDE = 52500000;
+    /** Cell longitude. */
+    private static final int LONGITUDE = 13400000;
+
+    /** Latitudes of fixes. */
+    private final double[] latitudes = new double[COUNT];
+    /** Longitudes of fixes. */
+    private final double[] longitudes = new double[COUNT];
+    /** Current fix. */
+    private int i = 0;
+
+    /**
+     * Set up fixes within some kilometres around the cell.
+     */
+    @Setup
+    public void setUp() {
+        final Random r = new Random(42);
+        for (int k = 0; k < COUNT; k++) {
+            this.latitudes[k] = LATITUDE / Geofence.E6 + r.nextGaussian()
+                    * 0.01;
+            this.longitudes[k] = LONGITUDE / Geofence.E6 + r.nextGaussian()
+                    * 0.01;
+        }
+    }
+
+    /**
+     * @return true, if fix is inside
+     */
+    @Benchmark
+    public boolean contains() {
+        this.i = (this.i + 1) & (COUNT - 1);
+        return Geofence.contains(LATITUDE, LONGITUDE, 500,
+                this.latitudes[this.i], this.longitudes[this.i]);
+    }
+
+    /**
+     * @return distance
+     */
+    @Benchmark
+    public float getDistance() {
+        this.i = (this.i + 1) & (COUNT - 1);
+        return Geofence.getDistance(LATITUDE / Geofence.E6, LONGITUDE
+                / Geofence.E6, this.latitudes[this.i], this.longitudes[this.i]);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark {@link TimeBuckets} against the {@link Calendar} it replaces.
+ *
+ * @author flx
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeBucketsBenchmark {
+    /** Number of timestamps. */
+    private static final int COUNT = 1024;
+
+    /** Timestamps spread over a year. */
+    private final long[] times = new long[COUNT];
+    /** Buckets. */
+    private final long[] buckets = new long[TimeBuckets.SIZE];
+    /** {@link TimeBuckets} under test. */
+    private TimeBuckets timeBuckets;
+    /** {@link Calendar} for comparison. */
+    private Calendar calendar;
+    /** Current timestamp. */
+    private int i = 0;
+
+    /**
+     * Set up timestamps.
+     */
+    @Setup
+    public void setUp() {
+        final TimeZone tz = TimeZone.getTimeZone("Europe/Berlin");
+        this.timeBuckets = new TimeBuckets(tz, Calendar.MONDAY, 4);
+        this.calendar = Calendar.getInstance(tz, Locale.GERMANY);
+        final long start = 1356998400000L;
+        for (int k = 0; k < COUNT; k++) {
+            this.times[k] = start + k * 30817013L;
+        }
+    }
+
+    /**
+     * @return next timestamp
+     */
+    private long next() {
+        this.i = (this.i + 1) & (COUNT - 1);
+        return this.times[this.i];
+    }
+
+    /**
+     * @return buckets
+     */
+    @Benchmark
+    public long[] get() {
+        this.timeBuckets.get(this.next(), this.buckets);
+        return this.buckets;
+    }
+
+    /**
+     * @return buckets
+     */
+    @Benchmark
+    public long[] getCalendar() {
+        final Calendar c = this.calendar;
+        c.setTimeInMillis(this.next());
+        this.buckets[TimeBuckets.YEAR] = c.get(Calendar.YEAR);
+        this.buckets[TimeBuckets.MONTH] = c.get(Calendar.MONTH);
+        this.buckets[TimeBuckets.WEEK_OF_YEAR] = c.get(Calendar.WEEK_OF_YEAR);
+        this.buckets[TimeBuckets.DAY_OF_YEAR] = c.get(Calendar.DAY_OF_YEAR);
+        return this.buckets;
+    }
+
+    /**
+     * @return rounded time
+     */
+    @Benchmark
+    public long round() {
+        return this.timeBuckets.round(this.next(), 15);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.util.HashMap;
+
+/**
+ * Grid of cells for finding the {@link Geofence} containing a location
+ * without testing all cells. Each cell is put into all buckets overlapped by
+ * its bounding box, up to {@link #MAX_BUCKETS_A_CELL} buckets. That covers
+ * cells with a radius up to about 20km away from the poles. Larger cells and
+ * cells near the poles are tested on every lookup.
+ *
+ * @author flx
+ */
+public final class CellGrid {
+
+    /**
+     * Size of a bucket in degrees * 1E6.
+     */
+    private static final int BUCKET_SIZE = 20000; // 0.02 degrees, about 2km
+    /**
+     * Number of buckets around the globe.
+     */
+    private static final int BUCKETS_A_CIRCLE = 360000000 / BUCKET_SIZE;
+    /**
+     * Cells covering more buckets are tested on every lookup. A cell of 20km
+     * radius at 52N covers about 700 buckets.
+     */
+    static final int MAX_BUCKETS_A_CELL = 1024;
+    /**
+     * Less than the shortest length of a degree of latitude in meters.
+     */
+    private static final double METERS_A_DEGREE_LATITUDE = 110000.0;
+    /**
+     * Less than the length of a degree of longitude at the equator in meters.
+     */
+    private static final double METERS_A_DEGREE_LONGITUDE = 111000.0;
+    /**
+     * Largest latitude * 1E6.
+     */
+    private static final int MAX_LATITUDE = 90000000;
+
+    /**
+     * Cells' latitudes * 1E6.
+     */
+    private final int[] latitudes;
+    /**
+     * Cells' longitudes * 1E6.
+     */
+    private final int[] longitudes;
+    /**
+     * Cells' radius in meters.
+     */
+    private final int[] radii;
+    /**
+     * Cells by bucket, ascending. First element holds the number of cells.
+     */
+    private final HashMap<Long, int[]> buckets = new HashMap<Long, int[]>();
+    /**
+     * Cells tested on every lookup, ascending. First element holds the number
+     * of cells.
+     */
+    private int[] large = new int[]{0};
+
+    /**
+     * Constructor. The arrays are kept, do not modify them afterwards.
+     *
+     * @param latitudes  cells' latitudes * 1E6
+     * @param longitudes cells' longitudes * 1E6
+     * @param radii      cells' radius in meters
+     */
+    public CellGrid(final int[] latitudes, final int[] longitudes,
+            final int[] radii) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.radii = radii;
+        final int l = latitudes.length;
+        for (int i = 0; i < l; i++) {
+            this.add(i);
+        }
+    }
+
+    /**
+     * @return number of cells
+     */
+    public int size() {
+        return this.latitudes.length;
+    }
+
+    /**
+     * @return number of cells tested on every lookup
+     */
+    int getLargeCount() {
+        return this.large[0];
+    }
+
+    /**
+     * Put a cell into the buckets of its bounding box.
+     *
+     * @param i cell
+     */
+    private void add(final int i) {
+        final int r = Math.max(0, this.radii[i]);
+        // pad by one bucket for the ellipsoid's deviation
+        final long dLat = (long) (r / METERS_A_DEGREE_LATITUDE * Geofence.E6)
+                + BUCKET_SIZE;
+        final long latMin = this.latitudes[i] - dLat;
+        final long latMax = this.latitudes[i] + dLat;
+        final double maxLat = Math.min(MAX_LATITUDE,
+                Math.max(Math.abs(latMin), Math.abs(latMax)));
+        final double cos = Math.cos(Math.toRadians(maxLat / Geofence.E6));
+        final long rows = floorDiv(latMax, BUCKET_SIZE)
+                - floorDiv(latMin, BUCKET_SIZE) + 1;
+        long dLong = Long.MAX_VALUE;
+        if (cos > 0.0) {
+            dLong = (long) (r / (METERS_A_DEGREE_LONGITUDE * cos)
+                    * Geofence.E6) + BUCKET_SIZE;
+        }
+        if (latMax >= MAX_LATITUDE || latMin <= -MAX_LATITUDE
+                || dLong >= (long) BUCKETS_A_CIRCLE * BUCKET_SIZE
+                || rows * (2 * dLong / BUCKET_SIZE + 2) > MAX_BUCKETS_A_CELL) {
+            // poles, huge or covering many buckets
+            this.large = append(this.large, i);
+            return;
+        }
+        final long longMin = this.longitudes[i] - dLong;
+        final long longMax = this.longitudes[i] + dLong;
+        final long colMin = floorDiv(longMin, BUCKET_SIZE);
+        final long colMax = floorDiv(longMax, BUCKET_SIZE);
+        for (long row = floorDiv(latMin, BUCKET_SIZE); // .
+             row <= floorDiv(latMax, BUCKET_SIZE); row++) {
+            for (long col = colMin; col <= colMax; col++) {
+                final Long key = getKey(row, col);
+                this.buckets.put(key, append(this.buckets.get(key), i));
+            }
+        }
+    }
+
+    /**
+     * Find the first cell containing a location.
+     *
+     * @param latitude  location's latitude in degrees
+     * @param longitude location's longitude in degrees
+     * @return index of first cell containing the location, -1 if none
+     */
+    public int find(final double latitude, final double longitude) {
+        final long row = floorDiv((long) Math.floor(latitude * Geofence.E6),
+                BUCKET_SIZE);
+        final long col = floorDiv((long) Math.floor(longitude * Geofence.E6),
+                BUCKET_SIZE);
+        int[] bucket = this.buckets.get(getKey(row, col));
+        if (bucket == null) {
+            bucket = new int[]{0};
+        }
+        final int[] l = this.large;
+        // merge both lists to test cells in order
+        int i = 1;
+        int j = 1;
+        while (i <= bucket[0] || j <= l[0]) {
+            final int c;
+            if (j > l[0] || i <= bucket[0] && bucket[i] < l[j]) {
+                c = bucket[i];
+                ++i;
+            } else {
+                c = l[j];
+                ++j;
+            }
+            if (Geofence.contains(this.latitudes[c], this.longitudes[c],
+                    this.radii[c], latitude, longitude)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get key of a bucket.
+     *
+     * @param row latitude bucket
+     * @param col longitude bucket, wrapped around the globe
+     * @return key
+     */
+    private static Long getKey(final long row, final long col) {
+        final long c = col - floorDiv(col, BUCKETS_A_CIRCLE) * BUCKETS_A_CIRCLE;
+        return row * BUCKETS_A_CIRCLE + c;
+    }
+
+    /**
+     * Append to a list.
+     *
+     * @param list list, first element holds the size, may be null
+     * @param i    value
+     * @return list, grown if needed
+     */
+    private static int[] append(final int[] list, final int i) {
+        int[] ret = list;
+        if (ret == null) {
+            ret = new int[]{0, 0};
+        } else if (ret[0] + 1 >= ret.length) {
+            ret = new int[ret.length * 2];
+            System.arraycopy(list, 0, ret, 0, list.length);
+        }
+        ++ret[0];
+        ret[ret[0]] = i;
+        return ret;
+    }
+
+    /**
+     * Divide and round towards negative infinity.
+     *
+     * @param x dividend
+     * @param y divisor, positive
+     * @return floor(x / y)
+     */
+    private static long floorDiv(final long x, final long y) {
+        return TimeBuckets.floorDiv(x, y);
+    }
+}
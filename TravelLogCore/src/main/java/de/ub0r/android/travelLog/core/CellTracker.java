@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+/**
+ * Enter/exit state machine for cells. A cell is entered once fixes stayed
+ * inside its radius for the dwell time. It is left once fixes stayed outside
+ * its exit margin for the dwell time, or once fixes stayed inside another cell
+ * for the dwell time. The exit margin is checked by the caller and should be
+ * larger than the radius.
+ *
+ * @author flx
+ */
+public final class CellTracker {
+
+    /**
+     * Cell id: state unknown, e.g. after an update.
+     */
+    public static final long UNKNOWN = -1L;
+    /**
+     * Cell id: none.
+     */
+    public static final long NONE = 0L;
+
+    /**
+     * Transition: nothing changed.
+     */
+    public static final int NOTHING = 0;
+    /**
+     * Transition: entered a cell.
+     */
+    public static final int ENTER = 1;
+    /**
+     * Transition: left a cell.
+     */
+    public static final int EXIT = 2;
+
+    /**
+     * Cell we are in.
+     */
+    private long inside;
+    /**
+     * Cell we might enter.
+     */
+    private long candidate;
+    /**
+     * First fix inside candidate.
+     */
+    private long candidateSince;
+    /**
+     * First fix outside the exit margin of the cell we are in.
+     */
+    private long outsideSince;
+    /**
+     * Time of last {@link #ENTER}, not persisted.
+     */
+    private long enterTime = 0L;
+    /**
+     * Time of last {@link #EXIT}, not persisted.
+     */
+    private long exitTime = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param inside         cell we are in, {@link #NONE} or {@link #UNKNOWN}
+     * @param candidate      cell we might enter or {@link #NONE}
+     * @param candidateSince first fix inside candidate
+     * @param outsideSince   first fix outside the exit margin, 0 for none
+     */
+    public CellTracker(final long inside, final long candidate,
+            final long candidateSince, final long outsideSince) {
+        this.inside = inside;
+        this.candidate = candidate;
+        this.candidateSince = candidateSince;
+        this.outsideSince = outsideSince;
+    }
+
+    /**
+     * @return cell we are in, {@link #NONE} or {@link #UNKNOWN}
+     */
+    public long getInside() {
+        return this.inside;
+    }
+
+    /**
+     * @return cell we might enter or {@link #NONE}
+     */
+    public long getCandidate() {
+        return this.candidate;
+    }
+
+    /**
+     * @return first fix inside candidate
+     */
+    public long getCandidateSince() {
+        return this.candidateSince;
+    }
+
+    /**
+     * @return first fix outside the exit margin, 0 for none
+     */
+    public long getOutsideSince() {
+        return this.outsideSince;
+    }
+
+    /**
+     * Get time of the {@link #ENTER} returned by the last update(): the first
+     * fix inside the entered cell.
+     *
+     * @return time of entering
+     */
+    public long getEnterTime() {
+        return this.enterTime;
+    }
+
+    /**
+     * Get time of the {@link #EXIT} returned by the last update(): the first
+     * fix outside the exit margin of the left cell.
+     *
+     * @return time of leaving
+     */
+    public long getExitTime() {
+        return this.exitTime;
+    }
+
+    /**
+     * Feed a fix.
+     *
+     * @param now      time of fix
+     * @param dwell    dwell time in milliseconds, 0 for none
+     * @param inMargin true, if the fix is within the exit margin of the cell
+     *                 we are in
+     * @param found    cell whose radius contains the fix, {@link #NONE} if
+     *                 none; the cell we are in, if its radius contains the fix
+     *                 too
+     * @return transitions, {@link #EXIT} and {@link #ENTER} combined
+     */
+    public int update(final long now, final long dwell, final boolean inMargin,
+            final long found) {
+        if (this.inside == UNKNOWN) {
+            // take the current fix as it is
+            this.inside = found;
+            this.candidate = NONE;
+            this.candidateSince = 0L;
+            this.outsideSince = 0L;
+            this.enterTime = now;
+            this.exitTime = now;
+            return found == NONE ? EXIT : ENTER;
+        }
+
+        if (found == NONE || found == this.inside) {
+            this.candidate = NONE;
+            this.candidateSince = 0L;
+        } else if (found != this.candidate || now < this.candidateSince) {
+            this.candidate = found;
+            this.candidateSince = now;
+        }
+
+        int ret = NOTHING;
+        if (this.inside != NONE) {
+            // another cell beats the exit margin once its dwell time passed
+            final boolean handover = this.candidate != NONE
+                    && now - this.candidateSince >= dwell;
+            if (inMargin) {
+                this.outsideSince = 0L;
+                if (!handover) {
+                    return ret;
+                }
+            } else if (this.outsideSince == 0L || now < this.outsideSince) {
+                this.outsideSince = now;
+            }
+            if (handover) {
+                // left when the other cell was reached, or earlier
+                this.exitTime = this.candidateSince;
+                if (this.outsideSince != 0L
+                        && this.outsideSince < this.exitTime) {
+                    this.exitTime = this.outsideSince;
+                }
+            } else if (now - this.outsideSince < dwell) {
+                return ret;
+            } else {
+                this.exitTime = this.outsideSince;
+            }
+            this.inside = NONE;
+            this.outsideSince = 0L;
+            ret = EXIT;
+        }
+
+        if (this.candidate != NONE && now - this.candidateSince >= dwell) {
+            this.inside = this.candidate;
+            this.enterTime = this.candidateSince;
+            if (ret != NOTHING && this.enterTime < this.exitTime) {
+                // do not start before the last cell was left
+                this.enterTime = this.exitTime;
+            }
+            this.candidate = NONE;
+            this.candidateSince = 0L;
+            ret |= ENTER;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+/**
+ * Format durations for display.
+ *
+ * @author flx
+ */
+public final class Durations {
+
+    /**
+     * Seconds per day.
+     */
+    private static final int SECONDS_A_DAY = 86400;
+    /**
+     * Seconds per hour.
+     */
+    private static final int SECONDS_A_HOUR = 3600;
+    /**
+     * Seconds per minute.
+     */
+    private static final int SECONDS_A_MINUTE = 60;
+    /**
+     * Milliseconds per second.
+     */
+    private static final int MILLIS_A_SECOND = 1000;
+    /**
+     * Smallest number with two digits.
+     */
+    private static final int TEN = 10;
+    /**
+     * Size of two digit tables.
+     */
+    private static final int HUNDRED = 100;
+    /**
+     * Expected length of formatted durations.
+     */
+    private static final int CAPACITY = 16;
+    /**
+     * Tens digit of 0..99.
+     */
+    private static final char[] DIGIT_TENS = new char[HUNDRED];
+    /**
+     * Ones digit of 0..99.
+     */
+    private static final char[] DIGIT_ONES = new char[HUNDRED];
+
+    static {
+        for (int i = 0; i < HUNDRED; i++) {
+            DIGIT_TENS[i] = (char) ('0' + i / TEN);
+            DIGIT_ONES[i] = (char) ('0' + i % TEN);
+        }
+    }
+
+    /**
+     * No instances.
+     */
+    private Durations() {
+    }
+
+    /**
+     * Format a duration, e.g. "1d 02:05", "03:07", "12min" or "40s".
+     *
+     * @param milliseconds duration in milliseconds
+     * @return formatted duration
+     */
+    public static String format(final long milliseconds) {
+        return append(new StringBuilder(CAPACITY), milliseconds).toString();
+    }
+
+    /**
+     * Append a formatted duration, see {@link #format(long)}. Nothing but the
+     * {@link StringBuilder}'s buffer is allocated.
+     *
+     * @param sb           {@link StringBuilder}
+     * @param milliseconds duration in milliseconds
+     * @return sb
+     */
+    public static StringBuilder append(final StringBuilder sb,
+            final long milliseconds) {
+        final int seconds = (int) (milliseconds / MILLIS_A_SECOND);
+        final int d = seconds / SECONDS_A_DAY;
+        final int h = (seconds % SECONDS_A_DAY) / SECONDS_A_HOUR;
+        final int m = (seconds % SECONDS_A_HOUR) / SECONDS_A_MINUTE;
+        if (d > 0) {
+            sb.append(d).append('d').append(' ');
+        }
+        if (h > 0 || d > 0) {
+            // 0 <= h < 24
+            sb.append(DIGIT_TENS[h]).append(DIGIT_ONES[h]).append(':');
+        }
+        if (d == 0 && h == 0) {
+            if (m > 0) {
+                appendMinutes(sb, m).append("min");
+            } else {
+                sb.append(seconds).append('s');
+            }
+        } else if (h > 0) {
+            // 0 <= m < 60
+            sb.append(DIGIT_TENS[m]).append(DIGIT_ONES[m]);
+        } else {
+            appendMinutes(sb, m);
+        }
+        return sb;
+    }
+
+    /**
+     * Append minutes without leading zero.
+     *
+     * @param sb {@link StringBuilder}
+     * @param m  minutes, negative for negative durations
+     * @return sb
+     */
+    private static StringBuilder appendMinutes(final StringBuilder sb,
+            final int m) {
+        if (m >= 0 && m < TEN) {
+            return sb.append(DIGIT_ONES[m]);
+        } else if (m >= TEN && m < HUNDRED) {
+            return sb.append(DIGIT_TENS[m]).append(DIGIT_ONES[m]);
+        }
+        return sb.append(m);
+    }
+}
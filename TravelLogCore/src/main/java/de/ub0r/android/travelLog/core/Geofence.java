@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+/*
+ * getDistance() is derived from computeDistanceAndBearing() in
+ * android.location.Location of the Android Open Source Project:
+ *
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ub0r.android.travelLog.core;
+
+/**
+ * Match locations against circular cells on the WGS84 ellipsoid.
+ *
+ * @author flx
+ */
+public final class Geofence {
+
+    /**
+     * Factor for coordinates stored as integers.
+     */
+    public static final double E6 = 1E6;
+
+    /**
+     * WGS84 major axis.
+     */
+    private static final double AXIS_MAJOR = 6378137.0;
+    /**
+     * WGS84 minor axis.
+     */
+    private static final double AXIS_MINOR = 6356752.3142;
+    /**
+     * Degrees to radians.
+     */
+    private static final double RADIANS_A_DEGREE = Math.PI / 180.0;
+    /**
+     * Maximal iterations.
+     */
+    private static final int MAX_ITERATIONS = 20;
+    /**
+     * Stop iterating once lambda changes less than this.
+     */
+    private static final double PRECISION = 1.0e-12;
+
+    /**
+     * No instances.
+     */
+    private Geofence() {
+    }
+
+    /**
+     * Check whether a location is within a cell.
+     *
+     * @param cellLatitude  cell's latitude * 1E6
+     * @param cellLongitude cell's longitude * 1E6
+     * @param radius        cell's radius in meters
+     * @param latitude      location's latitude in degrees
+     * @param longitude     location's longitude in degrees
+     * @return true, if location is within the cell
+     */
+    public static boolean contains(final int cellLatitude,
+            final int cellLongitude, final int radius, final double latitude,
+            final double longitude) {
+        return getDistance(latitude, longitude, cellLatitude / E6,
+                cellLongitude / E6) <= radius;
+    }
+
+    /**
+     * Get the distance between two locations. It gives the same results as
+     * android.location.Location.distanceTo(), using Vincenty's inverse formula.
+     * Ported from AOSP's Location.computeDistanceAndBearing(), see the
+     * license notice above.
+     *
+     * @param lat1 first latitude in degrees
+     * @param lon1 first longitude in degrees
+     * @param lat2 second latitude in degrees
+     * @param lon2 second longitude in degrees
+     * @return distance in meters
+     */
+    public static float getDistance(final double lat1, final double lon1,
+            final double lat2, final double lon2) {
+        final double f = (AXIS_MAJOR - AXIS_MINOR) / AXIS_MAJOR;
+        final double aSqMinusBSqOverBSq = (AXIS_MAJOR * AXIS_MAJOR - AXIS_MINOR
+                * AXIS_MINOR)
+                / (AXIS_MINOR * AXIS_MINOR);
+
+        final double l = lon2 * RADIANS_A_DEGREE - lon1 * RADIANS_A_DEGREE;
+        final double u1 = Math.atan((1.0 - f)
+                * Math.tan(lat1 * RADIANS_A_DEGREE));
+        final double u2 = Math.atan((1.0 - f)
+                * Math.tan(lat2 * RADIANS_A_DEGREE));
+
+        final double cosU1 = Math.cos(u1);
+        final double cosU2 = Math.cos(u2);
+        final double sinU1 = Math.sin(u1);
+        final double sinU2 = Math.sin(u2);
+        final double cosU1cosU2 = cosU1 * cosU2;
+        final double sinU1sinU2 = sinU1 * sinU2;
+
+        double a = 0.0;
+        double sigma = 0.0;
+        double deltaSigma = 0.0;
+        double lambda = l;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            final double lambdaOrig = lambda;
+            final double cosLambda = Math.cos(lambda);
+            final double sinLambda = Math.sin(lambda);
+            final double t1 = cosU2 * sinLambda;
+            final double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            final double sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            final double cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            final double sinAlpha = sinSigma == 0 ? 0.0 : cosU1cosU2
+                    * sinLambda / sinSigma;
+            final double cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            final double cos2SM = cosSqAlpha == 0 ? 0.0 : cosSigma - 2.0
+                    * sinU1sinU2 / cosSqAlpha;
+
+            final double uSquared = cosSqAlpha * aSqMinusBSqOverBSq;
+            a = 1 + (uSquared / 16384.0)
+                    * (4096.0 + uSquared
+                    * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+            final double b = (uSquared / 1024.0)
+                    * (256.0 + uSquared
+                    * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+            final double c = (f / 16.0) * cosSqAlpha
+                    * (4.0 + f * (4.0 - 3.0 * cosSqAlpha));
+            final double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = b * sinSigma
+                    * (cos2SM + (b / 4.0)
+                    * (cosSigma * (-1.0 + 2.0 * cos2SMSq) - (b / 6.0)
+                    * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma)
+                    * (-3.0 + 4.0 * cos2SMSq)));
+
+            lambda = l + (1.0 - c) * f * sinAlpha
+                    * (sigma + c * sinSigma
+                    * (cos2SM + c * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+
+            final double delta = (lambda - lambdaOrig) / lambda;
+            if (Math.abs(delta) < PRECISION) {
+                break;
+            }
+        }
+        return (float) (AXIS_MINOR * a * (sigma - deltaSigma));
+    }
+}
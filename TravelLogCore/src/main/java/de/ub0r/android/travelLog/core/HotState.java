@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Small state of the background location check, kept in memory and stored
+ * in a fixed layout file. Setters only touch memory, flush() writes the file
+ * once if anything changed.
+ *
+ * @author flx
+ */
+public final class HotState {
+
+    /**
+     * Version of file layout.
+     */
+    private static final int VERSION = 2;
+    /**
+     * Size of file: version, latitude, longitude, level, notify and the
+     * {@link CellTracker}.
+     */
+    private static final int SIZE = 56;
+
+    /**
+     * Backing file.
+     */
+    private final File file;
+
+    /**
+     * Last latitude * 1E6.
+     */
+    private int latitude = 0;
+    /**
+     * Last longitude * 1E6.
+     */
+    private int longitude = 0;
+    /**
+     * Last level, see {@link WarnLevels}.
+     */
+    private int level = WarnLevels.LEVEL_NOTHING;
+    /**
+     * Time of last notification.
+     */
+    private long notify = 0L;
+    /**
+     * {@link CellTracker#getInside()}.
+     */
+    private long inside = CellTracker.UNKNOWN;
+    /**
+     * {@link CellTracker#getCandidate()}.
+     */
+    private long candidate = CellTracker.NONE;
+    /**
+     * {@link CellTracker#getCandidateSince()}.
+     */
+    private long candidateSince = 0L;
+    /**
+     * {@link CellTracker#getOutsideSince()}.
+     */
+    private long outsideSince = 0L;
+    /**
+     * State differs from file.
+     */
+    private boolean dirty = false;
+
+    /**
+     * Constructor.
+     *
+     * @param file backing file
+     */
+    public HotState(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load state from file.
+     *
+     * @return false, if the file is missing or unreadable; it is written on
+     * next flush()
+     */
+    public synchronized boolean load() {
+        // rewrite file unless loaded below
+        this.dirty = true;
+        final long length = this.file.length();
+        if (length != SIZE) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(this.file));
+            final int version = in.readInt();
+            if (version != VERSION) {
+                return false;
+            }
+            this.latitude = in.readInt();
+            this.longitude = in.readInt();
+            this.level = in.readInt();
+            this.notify = in.readLong();
+            this.inside = in.readLong();
+            this.candidate = in.readLong();
+            this.candidateSince = in.readLong();
+            this.outsideSince = in.readLong();
+            this.dirty = false;
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Write state to file, if it changed since last load() or flush(). The
+     * file is replaced atomically.
+     *
+     * @return true, if the file was written
+     * @throws IOException on errors
+     */
+    public synchronized boolean flush() throws IOException {
+        if (!this.dirty) {
+            return false;
+        }
+        final File tmp = new File(this.file.getPath() + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(VERSION);
+            out.writeInt(this.latitude);
+            out.writeInt(this.longitude);
+            out.writeInt(this.level);
+            out.writeLong(this.notify);
+            out.writeLong(this.inside);
+            out.writeLong(this.candidate);
+            out.writeLong(this.candidateSince);
+            out.writeLong(this.outsideSince);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmp.renameTo(this.file)) {
+            throw new IOException("unable to rename " + tmp);
+        }
+        this.dirty = false;
+        return true;
+    }
+
+    /**
+     * @return last latitude * 1E6
+     */
+    public synchronized int getLatitude() {
+        return this.latitude;
+    }
+
+    /**
+     * @return last longitude * 1E6
+     */
+    public synchronized int getLongitude() {
+        return this.longitude;
+    }
+
+    /**
+     * Set last position.
+     *
+     * @param lat latitude * 1E6
+     * @param lon longitude * 1E6
+     */
+    public synchronized void setPosition(final int lat, final int lon) {
+        if (lat != this.latitude || lon != this.longitude) {
+            this.latitude = lat;
+            this.longitude = lon;
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * @return last level, see {@link WarnLevels}
+     */
+    public synchronized int getLevel() {
+        return this.level;
+    }
+
+    /**
+     * @return time of last notification
+     */
+    public synchronized long getNotify() {
+        return this.notify;
+    }
+
+    /**
+     * Set last notification.
+     *
+     * @param lvl  level, see {@link WarnLevels}
+     * @param time time of notification, 0 for none
+     */
+    public synchronized void setNotify(final int lvl, final long time) {
+        if (lvl != this.level || time != this.notify) {
+            this.level = lvl;
+            this.notify = time;
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * @return {@link CellTracker} holding a copy of the stored state
+     */
+    public synchronized CellTracker getTracker() {
+        return new CellTracker(this.inside, this.candidate,
+                this.candidateSince, this.outsideSince);
+    }
+
+    /**
+     * Store state of a {@link CellTracker}.
+     *
+     * @param tracker {@link CellTracker}
+     */
+    public synchronized void setTracker(final CellTracker tracker) {
+        if (tracker.getInside() != this.inside
+                || tracker.getCandidate() != this.candidate
+                || tracker.getCandidateSince() != this.candidateSince
+                || tracker.getOutsideSince() != this.outsideSince) {
+            this.inside = tracker.getInside();
+            this.candidate = tracker.getCandidate();
+            this.candidateSince = tracker.getCandidateSince();
+            this.outsideSince = tracker.getOutsideSince();
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Close a stream, ignore errors.
+     *
+     * @param in stream
+     */
+    private static void close(final DataInputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
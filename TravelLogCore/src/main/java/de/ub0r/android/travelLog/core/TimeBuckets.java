@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Split times into local calendar buckets without a {@link Calendar}. Results
+ * match {@link java.util.GregorianCalendar}'s fields. The local day of the last
+ * call is cached as long as the zone's offset does not change within it, so
+ * most calls do not even ask the {@link TimeZone}.
+ *
+ * @author flx
+ */
+public final class TimeBuckets {
+
+    /**
+     * Index in bucket array: year.
+     */
+    public static final int YEAR = 0;
+    /**
+     * Index in bucket array: month, 0 based like {@link Calendar#MONTH}.
+     */
+    public static final int MONTH = 1;
+    /**
+     * Index in bucket array: {@link Calendar#WEEK_OF_YEAR}.
+     */
+    public static final int WEEK_OF_YEAR = 2;
+    /**
+     * Index in bucket array: {@link Calendar#DAY_OF_YEAR}.
+     */
+    public static final int DAY_OF_YEAR = 3;
+    /**
+     * Index in bucket array: local days since epoch.
+     */
+    public static final int EPOCH_DAY = 4;
+    /**
+     * Index in bucket array: local weeks since epoch.
+     */
+    public static final int EPOCH_WEEK = 5;
+    /**
+     * Index in bucket array: local months since epoch.
+     */
+    public static final int EPOCH_MONTH = 6;
+    /**
+     * Size of bucket array.
+     */
+    public static final int SIZE = 7;
+
+    /**
+     * Milliseconds per minute.
+     */
+    private static final long MILLIS_A_MINUTE = 60000L;
+    /**
+     * Milliseconds per day.
+     */
+    private static final long MILLIS_A_DAY = 86400000L;
+    /**
+     * Minutes per hour.
+     */
+    private static final int MINUTES_A_HOUR = 60;
+    /**
+     * Days per week.
+     */
+    private static final int DAYS_A_WEEK = 7;
+    /**
+     * Months per year.
+     */
+    private static final int MONTHS_A_YEAR = 12;
+    /**
+     * Year of epoch.
+     */
+    private static final int EPOCH_YEAR = 1970;
+    /**
+     * Days between 0000-03-01 and 1970-01-01.
+     */
+    private static final long EPOCH_SHIFT = 719468L;
+    /**
+     * Days per 400 years.
+     */
+    private static final long DAYS_AN_ERA = 146097L;
+    /**
+     * Days of the year before each month, for non leap years.
+     */
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151,
+            181, 212, 243, 273, 304, 334};
+
+    /**
+     * Instance for default zone and locale.
+     */
+    private static TimeBuckets defaultInstance = null;
+
+    /**
+     * {@link TimeZone}.
+     */
+    private final TimeZone tz;
+    /**
+     * First day of week, see {@link Calendar#getFirstDayOfWeek()}.
+     */
+    private final int firstDayOfWeek;
+    /**
+     * Minimal days in first week, see
+     * {@link Calendar#getMinimalDaysInFirstWeek()}.
+     */
+    private final int minimalDaysInFirstWeek;
+
+    /**
+     * Start of cached day, inclusive.
+     */
+    private long cachedFrom = 0L;
+    /**
+     * End of cached day, exclusive. Nothing is cached while it is not greater
+     * than cachedFrom.
+     */
+    private long cachedTo = 0L;
+    /**
+     * Offset of cached day.
+     */
+    private int cachedOffset = 0;
+    /**
+     * Buckets of cached day.
+     */
+    private final long[] cached = new long[SIZE];
+
+    /**
+     * Constructor.
+     *
+     * @param tz                     {@link TimeZone}
+     * @param firstDayOfWeek         first day of week, e.g. {@link Calendar#MONDAY}
+     * @param minimalDaysInFirstWeek minimal days in first week of a year
+     */
+    public TimeBuckets(final TimeZone tz, final int firstDayOfWeek,
+            final int minimalDaysInFirstWeek) {
+        this.tz = tz;
+        this.firstDayOfWeek = firstDayOfWeek;
+        this.minimalDaysInFirstWeek = minimalDaysInFirstWeek;
+    }
+
+    /**
+     * Get {@link TimeBuckets} for the default zone and locale.
+     *
+     * @return {@link TimeBuckets}
+     */
+    public static synchronized TimeBuckets getDefault() {
+        if (defaultInstance == null) {
+            final Calendar c = Calendar.getInstance();
+            defaultInstance = new TimeBuckets(c.getTimeZone(),
+                    c.getFirstDayOfWeek(), c.getMinimalDaysInFirstWeek());
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Drop the default instance. Call it after the default zone or locale
+     * changed.
+     */
+    public static synchronized void reset() {
+        defaultInstance = null;
+    }
+
+    /**
+     * Get buckets.
+     *
+     * @param time    time in milliseconds
+     * @param buckets array of {@link #SIZE}, filled with the buckets
+     */
+    public synchronized void get(final long time, final long[] buckets) {
+        this.load(time);
+        System.arraycopy(this.cached, 0, buckets, 0, SIZE);
+    }
+
+    /**
+     * Get local days since epoch.
+     *
+     * @param time time in milliseconds
+     * @return days since 1970-01-01 in local time zone
+     */
+    public synchronized long getEpochDay(final long time) {
+        this.load(time);
+        return this.cached[EPOCH_DAY];
+    }
+
+    /**
+     * Get offset added to epoch days before dividing them into weeks. Weeks
+     * start at the first day of week.
+     *
+     * @return offset in days
+     */
+    public int getEpochWeekOffset() {
+        // 1970-01-01 was a thursday
+        return (Calendar.THURSDAY - this.firstDayOfWeek + DAYS_A_WEEK)
+                % DAYS_A_WEEK;
+    }
+
+    /**
+     * Round time to full minutes, then to a multiple of minutes of the local
+     * hour. Halves are rounded up.
+     *
+     * @param time    time in milliseconds
+     * @param roundTo minutes, 0 to skip rounding
+     * @return rounded time
+     */
+    public synchronized long round(final long time, final int roundTo) {
+        if (roundTo == 0) {
+            return time;
+        }
+        final long t = time / MILLIS_A_MINUTE * MILLIS_A_MINUTE;
+        final int offset;
+        if (t >= this.cachedFrom && t < this.cachedTo) {
+            offset = this.cachedOffset;
+        } else {
+            offset = this.tz.getOffset(t);
+        }
+        final long m = floorMod(floorDiv(t + offset, MILLIS_A_MINUTE),
+                MINUTES_A_HOUR);
+        final int r = (int) (m % roundTo);
+        if (r == 0) {
+            return t;
+        } else if (r >= roundTo / 2) {
+            return t + (roundTo - r) * MILLIS_A_MINUTE;
+        } else {
+            return t - r * MILLIS_A_MINUTE;
+        }
+    }
+
+    /**
+     * Fill the cache for the day of a given time.
+     *
+     * @param time time in milliseconds
+     */
+    private void load(final long time) {
+        if (time >= this.cachedFrom && time < this.cachedTo) {
+            return;
+        }
+        final int offset = this.tz.getOffset(time);
+        final long ed = floorDiv(time + offset, MILLIS_A_DAY);
+        this.fill(ed);
+        final long from = ed * MILLIS_A_DAY - offset;
+        final long to = from + MILLIS_A_DAY;
+        if (this.tz.getOffset(from) == offset
+                && this.tz.getOffset(to - 1L) == offset) {
+            this.cachedFrom = from;
+            this.cachedTo = to;
+            this.cachedOffset = offset;
+        } else {
+            // the offset changes on this day
+            this.cachedFrom = 0L;
+            this.cachedTo = 0L;
+        }
+    }
+
+    /**
+     * Fill cached buckets for a day.
+     *
+     * @param ed local days since epoch
+     */
+    private void fill(final long ed) {
+        // civil date from days, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = ed + EPOCH_SHIFT;
+        final long era = floorDiv(z, DAYS_AN_ERA);
+        final long doe = z - era * DAYS_AN_ERA;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doyMarch = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doyMarch + 2) / 153;
+        final int day = (int) (doyMarch - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 2 : mp - 10); // 0 based
+        final long year = yoe + era * 400 + (month < 2 ? 1 : 0);
+
+        int doy = DAYS_BEFORE_MONTH[month] + day;
+        if (month > 1 && isLeapYear(year)) {
+            ++doy;
+        }
+
+        this.cached[YEAR] = year;
+        this.cached[MONTH] = month;
+        this.cached[WEEK_OF_YEAR] = this.getWeekOfYear(ed, year, doy);
+        this.cached[DAY_OF_YEAR] = doy;
+        this.cached[EPOCH_DAY] = ed;
+        this.cached[EPOCH_WEEK] = floorDiv(ed + this.getEpochWeekOffset(),
+                DAYS_A_WEEK);
+        this.cached[EPOCH_MONTH] = (year - EPOCH_YEAR) * MONTHS_A_YEAR + month;
+    }
+
+    /**
+     * Get week of year like {@link Calendar#WEEK_OF_YEAR}.
+     *
+     * @param ed   local days since epoch
+     * @param year year
+     * @param doy  day of year, 1 based
+     * @return week of year
+     */
+    private int getWeekOfYear(final long ed, final long year, final int doy) {
+        final long jan1 = ed - doy + 1;
+        final long week1 = this.getFirstWeekStart(jan1);
+        if (ed < week1) {
+            // last week of previous year
+            return (int) ((ed - this.getFirstWeekStart(jan1
+                    - getLengthOfYear(year - 1))) / DAYS_A_WEEK) + 1;
+        }
+        if (ed >= this.getFirstWeekStart(jan1 + getLengthOfYear(year))) {
+            // first week of next year
+            return 1;
+        }
+        return (int) ((ed - week1) / DAYS_A_WEEK) + 1;
+    }
+
+    /**
+     * Get the first day of a year's first week.
+     *
+     * @param jan1 local days since epoch of january 1st
+     * @return local days since epoch
+     */
+    private long getFirstWeekStart(final long jan1) {
+        final int rel = (int) floorMod(getDayOfWeek(jan1) - this.firstDayOfWeek,
+                DAYS_A_WEEK);
+        long start = jan1 - rel;
+        if (DAYS_A_WEEK - rel < this.minimalDaysInFirstWeek) {
+            start += DAYS_A_WEEK;
+        }
+        return start;
+    }
+
+    /**
+     * Get day of week like {@link Calendar#DAY_OF_WEEK}.
+     *
+     * @param ed local days since epoch
+     * @return day of week
+     */
+    private static int getDayOfWeek(final long ed) {
+        // 1970-01-01 was a thursday
+        return (int) floorMod(ed + Calendar.THURSDAY - Calendar.SUNDAY,
+                DAYS_A_WEEK) + Calendar.SUNDAY;
+    }
+
+    /**
+     * @param year year
+     * @return true, if year is a leap year
+     */
+    private static boolean isLeapYear(final long year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * @param year year
+     * @return days of year
+     */
+    private static int getLengthOfYear(final long year) {
+        return isLeapYear(year) ? 366 : 365;
+    }
+
+    /**
+     * Divide and round towards negative infinity.
+     *
+     * @param x dividend
+     * @param y divisor, positive
+     * @return floor(x / y)
+     */
+    static long floorDiv(final long x, final long y) {
+        if (x >= 0L) {
+            return x / y;
+        }
+        return (x - y + 1L) / y;
+    }
+
+    /**
+     * Modulus matching {@link #floorDiv(long, long)}.
+     *
+     * @param x dividend
+     * @param y divisor, positive
+     * @return x - floorDiv(x, y) * y
+     */
+    private static long floorMod(final long x, final long y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
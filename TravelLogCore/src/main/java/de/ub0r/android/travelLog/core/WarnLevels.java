@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+/**
+ * Decide on work time warnings and alerts.
+ *
+ * @author flx
+ */
+public final class WarnLevels {
+
+    /**
+     * Normal.
+     */
+    public static final int LEVEL_NOTHING = 0;
+
+    /**
+     * Warning.
+     */
+    public static final int LEVEL_WARN = 1;
+
+    /**
+     * Alert.
+     */
+    public static final int LEVEL_ALERT = 2;
+
+    /**
+     * No instances.
+     */
+    private WarnLevels() {
+    }
+
+    /**
+     * Get level for a duration.
+     *
+     * @param duration counted time in milliseconds
+     * @param warn     warn limit in milliseconds, 0 to disable
+     * @param alert    alert limit in milliseconds, 0 to disable
+     * @return level
+     */
+    public static int getLevel(final long duration, final long warn,
+            final long alert) {
+        if (alert > 0L && duration > alert) {
+            return LEVEL_ALERT;
+        } else if (warn > 0L && duration > warn) {
+            return LEVEL_WARN;
+        }
+        return LEVEL_NOTHING;
+    }
+
+    /**
+     * Check whether the user needs to be notified.
+     *
+     * @param level      current level
+     * @param lastLevel  level of last notification
+     * @param period     time between repeated notifications, 0 for no repeats
+     * @param lastNotify time of last notification
+     * @param now        current time
+     * @return true, if a notification should be shown
+     */
+    public static boolean isNotify(final int level, final int lastLevel,
+            final long period, final long lastNotify, final long now) {
+        return level > LEVEL_NOTHING && (level != lastLevel || // .
+                (period > 0L && lastNotify < now - period));
+    }
+
+    /**
+     * Get delay until the next repeated notification.
+     *
+     * @param period     time between repeated notifications
+     * @param lastNotify time of last notification
+     * @param now        current time
+     * @return delay in milliseconds
+     */
+    public static long getDelay(final long period, final long lastNotify,
+            final long now) {
+        return lastNotify - now + period;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compare {@link CellGrid} with testing all cells.
+ *
+ * @author flx
+ */
+public final class CellGridTest {
+    /** Number of lookups a test. */
+    private static final int LOOKUPS = 2000;
+
+    /**
+     * Find the first cell containing a location by testing all of them.
+     *
+     * @param lats  cells' latitudes * 1E6
+     * @param longs cells' longitudes * 1E6
+     * @param radii cells' radius in meters
+     * @param lat   location's latitude in degrees
+     * @param lon   location's longitude in degrees
+     * @return index of first cell containing the location, -1 if none
+     */
+    private static int findLinear(final int[] lats, final int[] longs,
+            final int[] radii, final double lat, final double lon) {
+        for (int i = 0; i < lats.length; i++) {
+            if (Geofence.contains(lats[i], longs[i], radii[i], lat, lon)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Create random cells around a center and look up locations near them.
+     *
+     * @param seed   seed
+     * @param n      number of cells
+     * @param lat    center's latitude in degrees
+     * @param lon    center's longitude in degrees
+     * @param spread spread of cells and locations around the center in
+     *               degrees
+     * @return number of lookups hitting a cell
+     */
+    private static int compare(final long seed, final int n, final double lat,
+            final double lon, final double spread) {
+        final Random r = new Random(seed);
+        final int[] lats = new int[n];
+        final int[] longs = new int[n];
+        final int[] radii = new int[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = (int) (clampLatitude(lat + (r.nextDouble() * 2 - 1)
+                    * spread) * Geofence.E6);
+            longs[i] = (int) (wrapLongitude(lon + (r.nextDouble() * 2 - 1)
+                    * spread) * Geofence.E6);
+            // mostly small cells, some huge ones
+            radii[i] = r.nextInt(200) == 0 ? r.nextInt(50000) : 20 + r
+                    .nextInt(3000);
+        }
+        final CellGrid grid = new CellGrid(lats, longs, radii);
+        assertEquals(n, grid.size());
+        int hits = 0;
+        for (int k = 0; k < LOOKUPS; k++) {
+            final double la;
+            final double lo;
+            if (k % 2 == 0) {
+                // near a cell's border
+                final int i = r.nextInt(n);
+                final double d = radii[i] * (0.9 + r.nextDouble() * 0.2)
+                        / 111000d;
+                final double a = r.nextDouble() * 2 * Math.PI;
+                la = clampLatitude(lats[i] / Geofence.E6 + d * Math.cos(a));
+                lo = wrapLongitude(longs[i] / Geofence.E6 + d * Math.sin(a)
+                        / Math.max(0.01, Math.cos(Math.toRadians(la))));
+            } else {
+                la = clampLatitude(lat + (r.nextDouble() * 2 - 1) * spread);
+                lo = wrapLongitude(lon + (r.nextDouble() * 2 - 1) * spread);
+            }
+            final int expected = findLinear(lats, longs, radii, la, lo);
+            assertEquals("lookup " + la + "/" + lo, expected, grid.find(la, lo));
+            if (expected >= 0) {
+                ++hits;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @param lat latitude in degrees
+     * @return latitude within [-90, 90]
+     */
+    private static double clampLatitude(final double lat) {
+        return Math.max(-90d, Math.min(90d, lat));
+    }
+
+    /**
+     * @param lon longitude in degrees
+     * @return longitude within [-180, 180)
+     */
+    private static double wrapLongitude(final double lon) {
+        double ret = lon;
+        while (ret >= 180d) {
+            ret -= 360d;
+        }
+        while (ret < -180d) {
+            ret += 360d;
+        }
+        return ret;
+    }
+
+    /**
+     * Cells within a country.
+     */
+    @Test
+    public void testCountry() {
+        assertHits(compare(1L, 2000, 51d, 10d, 4d));
+    }
+
+    /**
+     * Dense cells within a city.
+     */
+    @Test
+    public void testCity() {
+        assertHits(compare(2L, 2000, 52.5d, 13.4d, 0.2d));
+    }
+
+    /**
+     * Cells on both sides of the antimeridian.
+     */
+    @Test
+    public void testAntimeridian() {
+        assertHits(compare(3L, 1000, -17d, 180d, 0.5d));
+        assertHits(compare(4L, 1000, 65d, -180d, 0.5d));
+    }
+
+    /**
+     * Cells around the poles.
+     */
+    @Test
+    public void testPoles() {
+        assertHits(compare(5L, 500, 89.5d, 0d, 0.5d));
+        assertHits(compare(6L, 500, -89.5d, 120d, 0.5d));
+        assertHits(compare(7L, 500, 88.8d, 179.9d, 1d));
+    }
+
+    /**
+     * Cells all over the world.
+     */
+    @Test
+    public void testWorld() {
+        compare(8L, 2000, 0d, 0d, 180d);
+    }
+
+    /**
+     * Cells up to about 20km radius are put into buckets, larger ones are
+     * tested on every lookup. Both are found up to their border.
+     */
+    @Test
+    public void testLargeCells() {
+        final int[] radii = { 500, 5000, 15000, 50000 };
+        final int n = radii.length;
+        final int[] lats = new int[n];
+        final int[] longs = new int[n];
+        for (int i = 0; i < n; i++) {
+            // cells in a row, 1 degree apart
+            lats[i] = 52500000;
+            longs[i] = 10000000 + i * 1000000;
+        }
+        final CellGrid grid = new CellGrid(lats, longs, radii);
+        assertEquals(1, grid.getLargeCount());
+        for (int i = 0; i < n; i++) {
+            final double la = lats[i] / Geofence.E6;
+            final double d = radii[i] * 0.99 / 111195d;
+            assertEquals(i, grid.find(la, longs[i] / Geofence.E6));
+            assertEquals(i, grid.find(la + d, longs[i] / Geofence.E6));
+            assertEquals(i, grid.find(la - d, longs[i] / Geofence.E6));
+            assertEquals(-1, grid.find(la + 1.02 * d, longs[i] / Geofence.E6));
+        }
+    }
+
+    /**
+     * No cells.
+     */
+    @Test
+    public void testEmpty() {
+        final CellGrid grid = new CellGrid(new int[0], new int[0], new int[0]);
+        assertEquals(0, grid.size());
+        assertEquals(-1, grid.find(52.5d, 13.4d));
+    }
+
+    /**
+     * Make sure a test did test something.
+     *
+     * @param hits number of lookups hitting a cell
+     */
+    private static void assertHits(final int hits) {
+        if (hits < LOOKUPS / 10) {
+            throw new AssertionError("too few hits: " + hits);
+        }
+    }
+}
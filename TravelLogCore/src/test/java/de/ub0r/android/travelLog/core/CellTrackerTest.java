@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Replay recorded fixes through {@link CellTracker} the way LocationChecker
+ * does.
+ *
+ * @author flx
+ */
+public final class CellTrackerTest {
+    /** Minute in milliseconds. */
+    private static final long MINUTE = 60000L;
+    /** Start of all replays. */
+    private static final long T0 = 1372636800000L;
+    /** Metres a degree of latitude. */
+    private static final double METRES_A_DEGREE = 111195d;
+
+    /** Cell 1 at 52.5N 13.4E, cell 2 445m north of it. */
+    private static final int[] LATITUDES = { 52500000, 52504000 };
+    /** Longitudes of cells. */
+    private static final int[] LONGITUDES = { 13400000, 13400000 };
+    /** Radii of cells, both 300m. */
+    private static final int[] RADII = { 300, 300 };
+
+    /**
+     * Replay fixes given in metres north of cell 1, one a minute.
+     *
+     * @param tracker tracker
+     * @param cells  number of cells to use
+     * @param north  fixes as metres north of cell 1
+     * @param dwell  dwell time in minutes
+     * @param margin exit margin in percent of the radius
+     * @return transitions as "ENTER <cell> @<minute>" or "EXIT @<minute>"
+     */
+    private static List<String> replay(final CellTracker tracker,
+            final int cells, final int[] north, final long dwell,
+            final int margin) {
+        final CellGrid grid = new CellGrid(
+                Arrays.copyOf(LATITUDES, cells),
+                Arrays.copyOf(LONGITUDES, cells), Arrays.copyOf(RADII, cells));
+        final List<String> ret = new ArrayList<String>();
+        for (int k = 0; k < north.length; k++) {
+            final long now = T0 + k * MINUTE;
+            final double lat = LATITUDES[0] / Geofence.E6 + north[k]
+                    / METRES_A_DEGREE;
+            final double lon = LONGITUDES[0] / Geofence.E6;
+            int i = grid.find(lat, lon);
+            final int j = (int) tracker.getInside() - 1;
+            if (j >= 0 && Geofence.contains(LATITUDES[j], LONGITUDES[j],
+                    RADII[j], lat, lon)) {
+                // overlapping cells: stay in the cell we are in
+                i = j;
+            }
+            final boolean inMargin = j >= 0
+                    && Geofence.contains(LATITUDES[j], LONGITUDES[j],
+                            RADII[j] * margin / 100, lat, lon);
+            final int transition = tracker.update(now, dwell * MINUTE,
+                    inMargin, i >= 0 ? i + 1 : CellTracker.NONE);
+            if ((transition & CellTracker.EXIT) != 0) {
+                ret.add("EXIT @" + (tracker.getExitTime() - T0) / MINUTE);
+            }
+            if ((transition & CellTracker.ENTER) != 0) {
+                ret.add("ENTER " + tracker.getInside() + " @"
+                        + (tracker.getEnterTime() - T0) / MINUTE);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return tracker outside of all cells
+     */
+    private static CellTracker outside() {
+        return new CellTracker(CellTracker.NONE, CellTracker.NONE, 0L, 0L);
+    }
+
+    /**
+     * Arrive, sit at the border with jitter crossing the radius, leave.
+     */
+    @Test
+    public void testJitterAtBorder() {
+        final int[] fixes = { 1200, 900, 600, 280, 250, 270, 290, 240, 260,
+                320, 280, 340, 310, 290, 360, 330, 270, 410, 300, 280, 600,
+                800, 1000, 1000, 1000, 1000 };
+        assertEquals(Arrays.asList("ENTER 1 @3", "EXIT @20"),
+                replay(outside(), 1, fixes, 5, 150));
+    }
+
+    /**
+     * A single fix beyond the exit margin does not end a stay.
+     */
+    @Test
+    public void testShortExcursion() {
+        final int[] fixes = { 100, 100, 100, 100, 100, 100, 900, 100, 100, 100,
+                100, 100, 100, 100, 900, 900, 900, 900, 900, 900 };
+        assertEquals(Arrays.asList("ENTER 1 @0", "EXIT @14"),
+                replay(outside(), 1, fixes, 5, 150));
+    }
+
+    /**
+     * Jitter into the cell shorter than the dwell time does not enter it.
+     */
+    @Test
+    public void testDriveThrough() {
+        final int[] fixes = { -1500, -1000, -500, -200, 0, 200, 500, -310,
+                -290, -320, -295, -400 };
+        assertEquals(Arrays.<String> asList(),
+                replay(outside(), 1, fixes, 5, 150));
+    }
+
+    /**
+     * Without dwell time and margin every fix counts.
+     */
+    @Test
+    public void testNoDwell() {
+        final int[] fixes = { 500, 290, 310, 290, 500 };
+        assertEquals(Arrays.asList("ENTER 1 @1", "EXIT @2", "ENTER 1 @3",
+                "EXIT @4"), replay(outside(), 1, fixes, 0, 100));
+    }
+
+    /**
+     * Walk into the neighbouring cell: the old log ends when the new cell is
+     * reached, the new log starts there.
+     */
+    @Test
+    public void testSwitchCells() {
+        // cell 2 starts at 145m, exit margin of cell 1 ends at 450m
+        final int[] fixes = { 0, 0, 0, 0, 0, 0, 200, 250, 400, 500, 500, 500,
+                500, 500, 500, 500, 500 };
+        assertEquals(Arrays.asList("ENTER 1 @0", "EXIT @8", "ENTER 2 @8"),
+                replay(outside(), 2, fixes, 5, 150));
+    }
+
+    /**
+     * Move between two cells lying inside each other's exit margin, like
+     * home and office next door: each stay hands over to the other cell.
+     */
+    @Test
+    public void testHandoverInMargin() {
+        // cell 2's centre is inside cell 1's margin and the other way round
+        final int[] fixes = { 0, 0, 0, 0, 0, 0, 445, 445, 445, 445, 445, 445,
+                445, 445, 445, 445, 0, 0, 0, 0, 0, 0, 0 };
+        assertEquals(Arrays.asList("ENTER 1 @0", "EXIT @6", "ENTER 2 @6",
+                "EXIT @16", "ENTER 1 @16"),
+                replay(outside(), 2, fixes, 5, 150));
+    }
+
+    /**
+     * Fixes in the overlap of two cells keep the cell we are in.
+     */
+    @Test
+    public void testOverlap() {
+        // both radii contain 200m
+        final int[] fixes = { 445, 445, 445, 445, 445, 445, 200, 200, 200,
+                200, 200, 200, 200, 200, 200 };
+        assertEquals(Arrays.asList("ENTER 2 @0"),
+                replay(outside(), 2, fixes, 5, 150));
+    }
+
+    /**
+     * A short visit to the other cell does not hand over.
+     */
+    @Test
+    public void testShortHandover() {
+        final int[] fixes = { 0, 0, 0, 0, 0, 0, 445, 445, 445, 0, 0, 0, 0, 0,
+                0 };
+        assertEquals(Arrays.asList("ENTER 1 @0"),
+                replay(outside(), 2, fixes, 5, 150));
+    }
+
+    /**
+     * Unknown state takes the first fix as it is.
+     */
+    @Test
+    public void testUnknown() {
+        final CellTracker tracker = new CellTracker(CellTracker.UNKNOWN,
+                CellTracker.NONE, 0L, 0L);
+        assertEquals(Arrays.asList("ENTER 1 @0"),
+                replay(tracker, 1, new int[] { 0, 500 }, 5, 150));
+        final CellTracker unknown = new CellTracker(CellTracker.UNKNOWN,
+                CellTracker.NONE, 0L, 0L);
+        assertEquals(Arrays.asList("EXIT @0"),
+                replay(unknown, 1, new int[] { 1500, 0 }, 5, 150));
+    }
+
+    /**
+     * State saved between two fixes resumes the replay.
+     */
+    @Test
+    public void testResume() {
+        final CellTracker tracker = outside();
+        assertEquals(Arrays.<String> asList(),
+                replay(tracker, 1, new int[] { 1500, 0, 0, 0 }, 5, 150));
+        final CellTracker resumed = new CellTracker(tracker.getInside(),
+                tracker.getCandidate(), tracker.getCandidateSince()
+                        - 4 * MINUTE, tracker.getOutsideSince());
+        // resumed replay starts at T0 again, candidate moved to minute -3
+        assertEquals(Arrays.asList("ENTER 1 @-3"),
+                replay(resumed, 1, new int[] { 0, 0, 0 }, 5, 150));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Golden tests for {@link Durations}. The expected strings are those of the
+ * former Logs.getTime(), quirks included.
+ *
+ * @author flx
+ */
+public final class DurationsTest {
+    /** Milliseconds per second. */
+    private static final long SECOND = 1000L;
+    /** Milliseconds per minute. */
+    private static final long MINUTE = 60 * SECOND;
+    /** Milliseconds per hour. */
+    private static final long HOUR = 60 * MINUTE;
+    /** Milliseconds per day. */
+    private static final long DAY = 24 * HOUR;
+
+    /**
+     * Assert format() and append() give the expected string.
+     *
+     * @param expected expected string
+     * @param duration duration in milliseconds
+     */
+    private static void assertFormat(final String expected,
+            final long duration) {
+        assertEquals(expected, Durations.format(duration));
+        final StringBuilder sb = new StringBuilder("x");
+        assertSame(sb, Durations.append(sb, duration));
+        assertEquals("x" + expected, sb.toString());
+    }
+
+    /**
+     * Zero.
+     */
+    @Test
+    public void testZero() {
+        assertFormat("0s", 0L);
+        assertFormat("0s", 999L);
+    }
+
+    /**
+     * Less than a minute.
+     */
+    @Test
+    public void testSeconds() {
+        assertFormat("1s", SECOND);
+        assertFormat("42s", 42 * SECOND + 999L);
+        assertFormat("59s", MINUTE - 1L);
+    }
+
+    /**
+     * Less than an hour, minutes are not padded.
+     */
+    @Test
+    public void testMinutes() {
+        assertFormat("1min", MINUTE);
+        assertFormat("1min", MINUTE + 59 * SECOND);
+        assertFormat("9min", 10 * MINUTE - 1L);
+        assertFormat("10min", 10 * MINUTE);
+        assertFormat("59min", 59 * MINUTE + 59 * SECOND);
+    }
+
+    /**
+     * Hours and minutes are padded to two digits.
+     */
+    @Test
+    public void testHours() {
+        assertFormat("01:00", HOUR);
+        assertFormat("01:01", HOUR + MINUTE);
+        assertFormat("01:10", HOUR + 10 * MINUTE);
+        assertFormat("10:00", 10 * HOUR);
+        assertFormat("10:59", 10 * HOUR + 59 * MINUTE + 59 * SECOND);
+        assertFormat("23:59", DAY - SECOND);
+    }
+
+    /**
+     * Days, hours are padded, minutes only if hours are not zero.
+     */
+    @Test
+    public void testDays() {
+        assertFormat("1d 00:0", DAY);
+        assertFormat("1d 00:1", DAY + MINUTE);
+        assertFormat("1d 00:59", DAY + 59 * MINUTE);
+        assertFormat("1d 01:00", DAY + HOUR);
+        assertFormat("1d 01:01", DAY + HOUR + MINUTE + SECOND);
+        assertFormat("1d 23:59", 2 * DAY - SECOND);
+        assertFormat("14d 00:0", 14 * DAY);
+        assertFormat("24855d 03:14", Integer.MAX_VALUE * SECOND);
+    }
+
+    /**
+     * Negative durations, only seconds and minutes are meaningful.
+     */
+    @Test
+    public void testNegative() {
+        assertFormat("0s", -1L);
+        assertFormat("-1s", -SECOND);
+        assertFormat("-42s", -42 * SECOND);
+        assertFormat("-60s", -MINUTE);
+        assertFormat("-754s", -(12 * MINUTE + 34 * SECOND));
+        assertFormat("0", -HOUR);
+        assertFormat("-30", -(HOUR + 30 * MINUTE));
+        assertFormat("0", -DAY);
+        assertFormat("-1", -(DAY + HOUR + MINUTE + SECOND));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test {@link HotState}'s file handling.
+ *
+ * @author flx
+ */
+public final class HotStateTest {
+    /** Size of file. */
+    private static final int SIZE = 56;
+
+    /** Folder holding the state file. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** State file. */
+    private File file;
+
+    /**
+     * Set up file.
+     */
+    @Before
+    public void setUp() {
+        this.file = new File(this.folder.getRoot(), "hotstate");
+    }
+
+    /**
+     * Write raw bytes to the state file.
+     *
+     * @param data bytes
+     * @throws IOException on errors
+     */
+    private void write(final byte[] data) throws IOException {
+        final FileOutputStream out = new FileOutputStream(this.file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return fresh {@link HotState} on the state file
+     */
+    private HotState create() {
+        return new HotState(this.file);
+    }
+
+    /**
+     * Assert a {@link HotState} holds the defaults.
+     *
+     * @param state {@link HotState}
+     */
+    private static void assertDefaults(final HotState state) {
+        assertEquals(0, state.getLatitude());
+        assertEquals(0, state.getLongitude());
+        assertEquals(WarnLevels.LEVEL_NOTHING, state.getLevel());
+        assertEquals(0L, state.getNotify());
+        assertEquals(CellTracker.UNKNOWN, state.getTracker().getInside());
+    }
+
+    /**
+     * Missing file is written on first flush, then left alone.
+     *
+     * @throws IOException on errors
+     */
+    @Test
+    public void testFlushOnlyChanges() throws IOException {
+        final HotState state = this.create();
+        assertFalse(state.load());
+        assertTrue(state.flush());
+        assertFalse(state.flush());
+        final long modified = this.file.lastModified();
+
+        state.setPosition(0, 0);
+        state.setNotify(WarnLevels.LEVEL_NOTHING, 0L);
+        state.setTracker(state.getTracker());
+        assertFalse(state.flush());
+
+        final HotState loaded = this.create();
+        assertTrue(loaded.load());
+        assertFalse(loaded.flush());
+        assertEquals(modified, this.file.lastModified());
+
+        loaded.setPosition(1, 2);
+        assertTrue(loaded.flush());
+        assertFalse(loaded.flush());
+        assertFalse(new File(this.file.getPath() + ".tmp").exists());
+    }
+
+    /**
+     * File has a fixed size and keeps all values.
+     *
+     * @throws IOException on errors
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final HotState state = this.create();
+        state.setPosition(52500000, -13400000);
+        state.setNotify(WarnLevels.LEVEL_ALERT, 1372636800000L);
+        state.setTracker(new CellTracker(7L, 8L, 1372636900000L,
+                1372637000000L));
+        assertTrue(state.flush());
+        assertEquals(SIZE, this.file.length());
+
+        final HotState loaded = this.create();
+        assertTrue(loaded.load());
+        assertEquals(52500000, loaded.getLatitude());
+        assertEquals(-13400000, loaded.getLongitude());
+        assertEquals(WarnLevels.LEVEL_ALERT, loaded.getLevel());
+        assertEquals(1372636800000L, loaded.getNotify());
+        final CellTracker tracker = loaded.getTracker();
+        assertEquals(7L, tracker.getInside());
+        assertEquals(8L, tracker.getCandidate());
+        assertEquals(1372636900000L, tracker.getCandidateSince());
+        assertEquals(1372637000000L, tracker.getOutsideSince());
+    }
+
+    /**
+     * Truncated and corrupt files are not loaded and rewritten on next
+     * flush.
+     *
+     * @throws IOException on errors
+     */
+    @Test
+    public void testCorrupt() throws IOException {
+        final HotState state = this.create();
+        state.setPosition(52500000, 13400000);
+        state.flush();
+        final byte[] good = new byte[SIZE];
+        final FileInputStream in = new FileInputStream(this.file);
+        try {
+            assertEquals(SIZE, in.read(good));
+        } finally {
+            in.close();
+        }
+
+        final byte[][] bad = { new byte[0], Arrays.copyOf(good, 4),
+                Arrays.copyOf(good, 30), Arrays.copyOf(good, SIZE - 1),
+                Arrays.copyOf(good, SIZE + 1), new byte[SIZE], new byte[24],
+                "not a state file, but a text file with 56 bytes in it..."
+                        .getBytes("US-ASCII") };
+        assertEquals(SIZE, bad[bad.length - 1].length);
+        for (byte[] data : bad) {
+            this.write(data);
+            final HotState loaded = this.create();
+            assertFalse("length " + data.length, loaded.load());
+            assertDefaults(loaded);
+            assertTrue(loaded.flush());
+            assertEquals(SIZE, this.file.length());
+        }
+    }
+
+    /**
+     * A directory in place of the file is not loaded.
+     */
+    @Test
+    public void testUnreadable() {
+        assertTrue(this.file.mkdir());
+        final HotState state = this.create();
+        assertFalse(state.load());
+        assertDefaults(state);
+    }
+}
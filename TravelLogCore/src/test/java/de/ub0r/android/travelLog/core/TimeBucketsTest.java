@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2011 Felix Bechstein
+ *
+ * This file is part of TravelLog.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.ub0r.android.travelLog.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Compare {@link TimeBuckets} with {@link Calendar}.
+ *
+ * @author flx
+ */
+public final class TimeBucketsTest {
+    /** Milliseconds per minute. */
+    private static final long MINUTE = 60000L;
+    /** Milliseconds per hour. */
+    private static final long HOUR = 60 * MINUTE;
+    /** Milliseconds per day. */
+    private static final long DAY = 24 * HOUR;
+    /** 1970-01-02. */
+    private static final long START = DAY;
+    /** 2040-01-01. */
+    private static final long END = 2208988800000L;
+
+    /**
+     * Zones with DST, southern DST, half and quarter hour offsets, 30 minute
+     * DST and a zone which skipped a whole day.
+     */
+    private static final String[] ZONES = { "UTC", "Europe/Berlin",
+            "Europe/London", "America/New_York", "America/St_Johns",
+            "America/Sao_Paulo", "Australia/Lord_Howe", "Pacific/Chatham",
+            "Pacific/Apia", "Asia/Kolkata", "Asia/Kathmandu", "Asia/Tehran" };
+    /** Locales with different first days of week and first weeks. */
+    private static final Locale[] LOCALES = { Locale.US, Locale.GERMANY,
+            Locale.FRANCE, Locale.UK, new Locale("ar", "EG"),
+            new Locale("pt", "BR") };
+    /** Rounding steps in minutes. */
+    private static final int[] ROUNDS = { 1, 5, 7, 15, 30 };
+
+    /**
+     * Check a time.
+     *
+     * @param c       {@link Calendar}
+     * @param b       {@link TimeBuckets} set up like the {@link Calendar}
+     * @param buckets buffer
+     * @param time    time in milliseconds
+     */
+    private static void check(final Calendar c, final TimeBuckets b,
+            final long[] buckets, final long time) {
+        c.setTimeInMillis(time);
+        final long epochDay = TimeBuckets.floorDiv(
+                time + c.get(Calendar.ZONE_OFFSET)
+                        + c.get(Calendar.DST_OFFSET), DAY);
+        final int year = c.get(Calendar.YEAR);
+        final int month = c.get(Calendar.MONTH);
+        final long[] expected = { year, month, c.get(Calendar.WEEK_OF_YEAR),
+                c.get(Calendar.DAY_OF_YEAR), epochDay,
+                TimeBuckets.floorDiv(epochDay + b.getEpochWeekOffset(), 7),
+                (year - 1970) * 12L + month };
+        final String msg = c.getTimeZone().getID() + " "
+                + c.getFirstDayOfWeek() + "/" + c.getMinimalDaysInFirstWeek()
+                + " @" + time;
+        b.get(time, buckets);
+        assertArrayEquals(msg, expected, buckets);
+        assertEquals(msg, epochDay, b.getEpochDay(time));
+        for (int r : ROUNDS) {
+            assertEquals(msg + " round " + r, round(c, time, r),
+                    b.round(time, r));
+        }
+        assertEquals(msg, time, b.round(time, 0));
+    }
+
+    /**
+     * Round with {@link Calendar}, as done before {@link TimeBuckets}.
+     *
+     * @param c       {@link Calendar}
+     * @param time    time in milliseconds
+     * @param roundTo minutes
+     * @return rounded time
+     */
+    private static long round(final Calendar c, final long time,
+            final int roundTo) {
+        c.setTimeInMillis(time / MINUTE * MINUTE);
+        final int r = c.get(Calendar.MINUTE) % roundTo;
+        if (r == 0) {
+            return c.getTimeInMillis();
+        } else if (r >= roundTo / 2) {
+            c.add(Calendar.MINUTE, roundTo - r);
+        } else {
+            c.add(Calendar.MINUTE, -r);
+        }
+        return c.getTimeInMillis();
+    }
+
+    /**
+     * Random times in all zones and locales.
+     */
+    @Test
+    public void testRandom() {
+        final Random r = new Random(42L);
+        final long[] buckets = new long[TimeBuckets.SIZE];
+        for (String z : ZONES) {
+            final TimeZone tz = TimeZone.getTimeZone(z);
+            for (Locale l : LOCALES) {
+                final Calendar c = Calendar.getInstance(tz, l);
+                final TimeBuckets b = new TimeBuckets(tz,
+                        c.getFirstDayOfWeek(), c.getMinimalDaysInFirstWeek());
+                for (long t = START; t < END; t += (long) (r.nextDouble()
+                        * 20 * DAY)) {
+                    check(c, b, buckets, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Every few minutes around each change of a zone's offset, walking
+     * forwards and backwards.
+     */
+    @Test
+    public void testOffsetChanges() {
+        final long[] buckets = new long[TimeBuckets.SIZE];
+        for (String z : ZONES) {
+            final TimeZone tz = TimeZone.getTimeZone(z);
+            final Calendar c = Calendar.getInstance(tz, Locale.GERMANY);
+            final TimeBuckets b = new TimeBuckets(tz, c.getFirstDayOfWeek(),
+                    c.getMinimalDaysInFirstWeek());
+            int changes = 0;
+            int offset = tz.getOffset(START);
+            for (long day = START; day < END; day += HOUR) {
+                final int o = tz.getOffset(day);
+                if (o == offset) {
+                    continue;
+                }
+                offset = o;
+                ++changes;
+                for (long t = day - DAY; t < day + DAY; t += 7 * MINUTE + 13) {
+                    check(c, b, buckets, t);
+                }
+                for (long t = day + DAY; t > day - DAY; t -= 7 * MINUTE + 13) {
+                    check(c, b, buckets, t);
+                }
+            }
+            if (tz.useDaylightTime()) {
+                assertTrue(z, changes > 0);
+            }
+        }
+    }
+
+    /**
+     * Every day boundary of a year, including the last millisecond of a day.
+     */
+    @Test
+    public void testDayBoundaries() {
+        final long[] buckets = new long[TimeBuckets.SIZE];
+        for (String z : ZONES) {
+            final TimeZone tz = TimeZone.getTimeZone(z);
+            for (Locale l : LOCALES) {
+                final Calendar c = Calendar.getInstance(tz, l);
+                final TimeBuckets b = new TimeBuckets(tz,
+                        c.getFirstDayOfWeek(), c.getMinimalDaysInFirstWeek());
+                c.clear();
+                c.set(2012, Calendar.DECEMBER, 20);
+                final Calendar end = (Calendar) c.clone();
+                end.add(Calendar.YEAR, 1);
+                while (c.before(end)) {
+                    final long t = c.getTimeInMillis();
+                    check(c, b, buckets, t - 1);
+                    check(c, b, buckets, t);
+                    c.setTimeInMillis(t);
+                    c.add(Calendar.DAY_OF_YEAR, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Default instance follows the default zone after reset().
+     */
+    @Test
+    public void testReset() {
+        final TimeZone old = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            TimeBuckets.reset();
+            assertEquals(0L, TimeBuckets.getDefault().getEpochDay(HOUR));
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            assertEquals(0L, TimeBuckets.getDefault().getEpochDay(HOUR));
+            TimeBuckets.reset();
+            assertEquals(-1L, TimeBuckets.getDefault().getEpochDay(HOUR));
+        } finally {
+            TimeZone.setDefault(old);
+            TimeBuckets.reset();
+        }
+    }
+}